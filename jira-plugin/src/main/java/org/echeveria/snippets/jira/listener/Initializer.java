@@ -53,21 +53,27 @@ public class Initializer implements LifecycleAware, InitializingBean, Disposable
   @Override
   public void onStart() {
     eventPublisher.register(this);
+    eventPublisher.register(settingsManager);
   }
 
   @Override
   public void onStop() {
+    eventPublisher.unregister(settingsManager);
     eventPublisher.unregister(this);
+    settingsManager.flush(); // Not to lose the settings written behind.
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
     eventPublisher.register(this);
+    eventPublisher.register(settingsManager);
   }
 
   @Override
   public void destroy() throws Exception {
+    eventPublisher.unregister(settingsManager);
     eventPublisher.unregister(this);
+    SettingsManager.release(MyPluginComponent.PLUGIN_KEY); // Shuts it down along with its threads.
   }
 
   @EventListener
@@ -75,6 +81,7 @@ public class Initializer implements LifecycleAware, InitializingBean, Disposable
     String pluginKey = pluginEnabledEvent.getPlugin().getKey();
     if (pluginKey.equals(MyPluginComponent.PLUGIN_KEY)) {
       // Do our plug-in initialization here.
+      settingsManager.warmUp(); // In the background, not to hold up the plugin.
     }
   }
 
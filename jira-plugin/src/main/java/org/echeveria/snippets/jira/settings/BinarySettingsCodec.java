@@ -0,0 +1,321 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+
+/**
+ * Encodes settings in a compact binary format, Base64-encoded after the marker, which is much cheaper
+ * to encode than JSON, as the fields are written as they are rather than formatted as text. The
+ * Base64 encoding makes it somewhat larger than JSON though, unless it's compressed.
+ *
+ * The fields are found and made accessible once per class, the way Gson does: every field of the
+ * class and its super classes, except static, transient and synthetic fields. Each field is encoded
+ * as a tag of its type, its name and its value, so that the settings can still be decoded after
+ * fields are added or removed, and can be decoded into a JSON tree without the class. Fields of
+ * types other than strings, numbers and booleans are encoded as JSON.
+ */
+public class BinarySettingsCodec implements SettingsCodec {
+
+  /**
+   * The marker of the first version of the format.
+   */
+  public static final String MARKER = "~b1:";
+
+  private static final int END = 0;
+  private static final int NULL = 1;
+  private static final int STRING = 2;
+  private static final int INT = 3;
+  private static final int LONG = 4;
+  private static final int DOUBLE = 5;
+  private static final int BOOLEAN = 6;
+  private static final int JSON = 7;
+
+  private final Gson gson = new Gson();
+  private final ConcurrentMap<Class<?>, Map<String, Field>> fieldsByClass = Maps.newConcurrentMap();
+  private final ConcurrentMap<Class<?>, TypeAdapter<?>> instantiators = Maps.newConcurrentMap();
+
+  @Override
+  public String getMarker() {
+    return MARKER;
+  }
+
+  private Map<String, Field> getFields(Class<?> settingsClass) {
+    return fieldsByClass.computeIfAbsent(settingsClass, key -> {
+      Map<String, Field> fields = Maps.newLinkedHashMap();
+      for (Class<?> clazz = key; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+        for (Field field : clazz.getDeclaredFields()) {
+          int modifiers = field.getModifiers();
+          if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+            continue;
+          }
+          if (!fields.containsKey(field.getName())) {
+            field.setAccessible(true);
+            fields.put(field.getName(), field);
+          }
+        }
+      }
+      return fields;
+    });
+  }
+
+  @Override
+  public String encode(Object settings) {
+    Output out = new Output();
+    try {
+      for (Field field : getFields(settings.getClass()).values()) {
+        writeField(out, field, field.get(settings));
+      }
+      out.writeByte(END);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot encode settings " + settings.getClass().getName(), e);
+    }
+    return MARKER + Base64.getEncoder().encodeToString(out.toByteArray());
+  }
+
+  private void writeField(Output out, Field field, Object value) {
+    if (value == null) {
+      out.writeByte(NULL);
+      writeString(out, field.getName());
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, field.getName());
+      writeString(out, (String) value);
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      out.writeByte(INT);
+      writeString(out, field.getName());
+      out.writeInt(((Number) value).intValue());
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      writeString(out, field.getName());
+      out.writeLong((Long) value);
+    } else if (value instanceof Double || value instanceof Float) {
+      out.writeByte(DOUBLE);
+      writeString(out, field.getName());
+      out.writeDouble(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      writeString(out, field.getName());
+      out.writeBoolean((Boolean) value);
+    } else {
+      out.writeByte(JSON);
+      writeString(out, field.getName());
+      writeString(out, gson.toJson(value, field.getGenericType()));
+    }
+  }
+
+  private static void writeString(Output out, String string) {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    writeLength(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer in) {
+    int length = readLength(in);
+    String string = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+    in.position(in.position() + length);
+    return string;
+  }
+
+  /**
+   * Writes the length in 7 bits a byte, most strings in settings take a single byte.
+   */
+  private static void writeLength(Output out, int length) {
+    while ((length & ~0x7F) != 0) {
+      out.writeByte((length & 0x7F) | 0x80);
+      length >>>= 7;
+    }
+    out.writeByte(length);
+  }
+
+  private static int readLength(ByteBuffer in) {
+    int length = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.get() & 0xFF;
+      length |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return length;
+      }
+    }
+    throw new IllegalArgumentException("Malformed length");
+  }
+
+  @Override
+  public <T> T decode(String encodedSettings, Class<T> classOfT) {
+    try {
+      ByteBuffer in = ByteBuffer.wrap(Base64.getDecoder().decode(encodedSettings.substring(MARKER.length())));
+      if (JsonElement.class.isAssignableFrom(classOfT)) {
+        return classOfT.cast(decodeTree(in));
+      }
+      return decodeObject(in, classOfT);
+    } catch (IllegalAccessException | RuntimeException e) {
+      throw new IllegalStateException("Cannot decode settings " + classOfT.getName(), e);
+    }
+  }
+
+  private <T> T decodeObject(ByteBuffer in, Class<T> classOfT) throws IllegalAccessException {
+    // Let Gson create the instance, with the no-args constructor if there is one.
+    TypeAdapter<?> instantiator = instantiators.computeIfAbsent(classOfT, gson::getAdapter);
+    T settings = classOfT.cast(instantiator.fromJsonTree(new JsonObject()));
+    Map<String, Field> fields = getFields(classOfT);
+    for (int tag = in.get(); tag != END; tag = in.get()) {
+      Field field = fields.get(readString(in));
+      Object value;
+      if (tag == JSON) {
+        String json = readString(in);
+        value = field != null ? gson.fromJson(json, field.getGenericType()) : null;
+      } else {
+        value = readValue(in, tag);
+      }
+      // Fields no longer in the class are skipped, as Gson does.
+      if (field != null && !(value == null && field.getType().isPrimitive())) {
+        field.set(settings, narrow(value, field.getType()));
+      }
+    }
+    return settings;
+  }
+
+  private static Object narrow(Object value, Class<?> type) {
+    if (type == short.class || type == Short.class) {
+      return ((Number) value).shortValue();
+    } else if (type == byte.class || type == Byte.class) {
+      return ((Number) value).byteValue();
+    } else if (type == float.class || type == Float.class) {
+      return ((Number) value).floatValue();
+    }
+    return value;
+  }
+
+  private JsonObject decodeTree(ByteBuffer in) {
+    JsonObject tree = new JsonObject();
+    for (int tag = in.get(); tag != END; tag = in.get()) {
+      String name = readString(in);
+      if (tag == JSON) {
+        tree.add(name, new JsonParser().parse(readString(in)));
+        continue;
+      }
+      Object value = readValue(in, tag);
+      if (value == null) {
+        // Null fields are left out of the tree, as Gson leaves them out of JSON.
+        continue;
+      }
+      if (value instanceof String) {
+        tree.add(name, new JsonPrimitive((String) value));
+      } else if (value instanceof Boolean) {
+        tree.add(name, new JsonPrimitive((Boolean) value));
+      } else {
+        tree.add(name, new JsonPrimitive((Number) value));
+      }
+    }
+    return tree;
+  }
+
+  private static Object readValue(ByteBuffer in, int tag) {
+    switch (tag) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(in);
+      case INT:
+        return in.getInt();
+      case LONG:
+        return in.getLong();
+      case DOUBLE:
+        return in.getDouble();
+      case BOOLEAN:
+        return in.get() != 0;
+      default:
+        throw new IllegalArgumentException("Unknown tag " + tag);
+    }
+  }
+
+  /**
+   * A growable byte array to encode into, unlike {@code DataOutputStream} it's not synchronized.
+   */
+  private static final class Output {
+
+    private byte[] bytes = new byte[256];
+    private int count;
+
+    private void ensureCapacity(int length) {
+      if (count + length > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + length));
+      }
+    }
+
+    void writeByte(int b) {
+      ensureCapacity(1);
+      bytes[count++] = (byte) b;
+    }
+
+    void writeBoolean(boolean b) {
+      writeByte(b ? 1 : 0);
+    }
+
+    void writeInt(int i) {
+      ensureCapacity(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        bytes[count++] = (byte) (i >>> shift);
+      }
+    }
+
+    void writeLong(long l) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        bytes[count++] = (byte) (l >>> shift);
+      }
+    }
+
+    void writeDouble(double d) {
+      writeLong(Double.doubleToLongBits(d));
+    }
+
+    void write(byte[] b) {
+      ensureCapacity(b.length);
+      System.arraycopy(b, 0, bytes, count, b.length);
+      count += b.length;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, count);
+    }
+
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Encodes settings as JSON with Gson, the default format of the settings.
+ *
+ * The type adapter of each settings class is resolved from Gson once and kept, so that encoding
+ * and decoding settings doesn't look it up through Gson every time. Hand-written type adapters
+ * can be registered in place of the reflective ones for the settings that are read the most.
+ */
+@SuppressWarnings("unchecked")
+public class GsonSettingsCodec implements SettingsCodec {
+
+  private final Gson gson;
+  private final ConcurrentMap<Class<?>, TypeAdapter<?>> typeAdapters = Maps.newConcurrentMap();
+
+  public GsonSettingsCodec() {
+    this(new Gson());
+  }
+
+  public GsonSettingsCodec(Gson gson) {
+    this.gson = gson;
+  }
+
+  /**
+   * Encodes and decodes the settings of the specified class with the specified type adapter.
+   *
+   * @param classOfT of the settings
+   * @param typeAdapter to encode and decode the settings with
+   * @param <T> the type of the settings
+   */
+  public <T> void registerTypeAdapter(Class<T> classOfT, TypeAdapter<T> typeAdapter) {
+    typeAdapters.put(classOfT, typeAdapter);
+  }
+
+  private <T> TypeAdapter<T> getTypeAdapter(Class<T> classOfT) {
+    return (TypeAdapter<T>) typeAdapters.computeIfAbsent(classOfT, gson::getAdapter);
+  }
+
+  @Override
+  public String getMarker() {
+    return "";
+  }
+
+  @Override
+  public String encode(Object settings) {
+    TypeAdapter<Object> typeAdapter = (TypeAdapter<Object>) getTypeAdapter(settings.getClass());
+    StringWriter writer = new StringWriter();
+    JsonWriter jsonWriter = new JsonWriter(writer);
+    jsonWriter.setSerializeNulls(false); // As Gson.toJson() does, null fields are left out.
+    try {
+      typeAdapter.write(jsonWriter, settings);
+      jsonWriter.flush();
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+    return writer.toString();
+  }
+
+  @Override
+  public <T> T decode(String encodedSettings, Class<T> classOfT) {
+    try {
+      return getTypeAdapter(classOfT).fromJson(encodedSettings);
+    } catch (IOException e) {
+      throw new JsonParseException(e);
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The settings of a settings key stored as a map of the settings IDs to the settings in the plugin
+ * settings, for the settings of which the IDs are not their indexes, see {@link Settings.Keyed}.
+ *
+ * The settings are addressed by their IDs, as a list it only reads the settings, in no particular
+ * order. The IDs of the settings changed since the map is read are kept, so that only the changes
+ * of them are published, and indexed again.
+ */
+class KeyedSettingsList extends StoredSettingsList {
+
+  private final Map<String, String> settingsMap;
+  private final Set<String> changedSettingsIds = Sets.newHashSet();
+  private List<String> settingsList;
+
+  KeyedSettingsList(PluginSettings pluginSettings, String storageKey, Map<String, String> settingsMap) {
+    super(pluginSettings, storageKey);
+    this.settingsMap = Maps.newLinkedHashMap(settingsMap);
+  }
+
+  private KeyedSettingsList(KeyedSettingsList settingsList) {
+    super(settingsList);
+    this.settingsMap = Maps.newLinkedHashMap(settingsList.settingsMap);
+    this.changedSettingsIds.addAll(settingsList.changedSettingsIds);
+  }
+
+  @Override
+  public int size() {
+    return settingsMap.size();
+  }
+
+  @Override
+  KeyedSettingsList asKeyed() {
+    return this;
+  }
+
+  @Override
+  void checkSequenced() {
+    throw new IllegalStateException("The settings are keyed rather than sequenced.");
+  }
+
+  @Override
+  public String get(int index) {
+    if (settingsList == null) {
+      settingsList = ImmutableList.copyOf(settingsMap.values());
+    }
+    return settingsList.get(index);
+  }
+
+  @Override
+  public void clear() {
+    changedSettingsIds.addAll(settingsMap.keySet());
+    settingsMap.clear();
+    settingsChanged();
+  }
+
+  boolean containsId(String settingsId) {
+    return settingsMap.containsKey(settingsId);
+  }
+
+  @Nullable
+  String getById(String settingsId) {
+    return settingsMap.get(settingsId);
+  }
+
+  void putById(String settingsId, String encodedSettings) {
+    settingsMap.put(settingsId, encodedSettings);
+    changedSettingsIds.add(settingsId);
+    settingsChanged();
+  }
+
+  void removeById(String settingsId) {
+    settingsMap.remove(settingsId);
+    changedSettingsIds.add(settingsId);
+    settingsChanged();
+  }
+
+  Map<String, String> getSettingsMap() {
+    return settingsMap;
+  }
+
+  Set<String> getChangedSettingsIds() {
+    return changedSettingsIds;
+  }
+
+  private void settingsChanged() {
+    settingsList = null;
+    setModified();
+  }
+
+  @Override
+  StoredSettingsList snapshot() {
+    return new KeyedSettingsList(pluginSettings, storageKey, settingsMap);
+  }
+
+  @Override
+  StoredSettingsList copy() {
+    return new KeyedSettingsList(this);
+  }
+
+  @Override
+  void flush() {
+    if (!isModified()) {
+      return;
+    }
+    if (isDeleted() && settingsMap.isEmpty()) {
+      pluginSettings.remove(storageKey);
+    } else {
+      pluginSettings.put(storageKey, settingsMap);
+    }
+  }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The settings of a settings key stored in pages of a fixed size in the plugin settings, so that a
+ * large number of settings of the same kind is not read and written as one huge list.
+ *
+ * The pages are stored under "{storage key}:page:{N}", and a small header of the page size and the
+ * number of settings is stored under the storage key itself. Reading the settings of an index reads
+ * only the page of it, and adding settings to the end writes only the last page and the header.
+ *
+ * The settings that are still stored as a single list (under the storage key) are migrated to
+ * pages on the first flush() after they're modified.
+ */
+class PagedSettingsList extends StoredSettingsList {
+
+  private static final String HEADER_PREFIX = "paged:";
+
+  /**
+   * Returns true if the specified value stored under a storage key is the header of paged settings.
+   *
+   * @param storedSettings the value stored under the storage key of the settings
+   * @return true if the stored value is the header of paged settings
+   */
+  static boolean isHeader(Object storedSettings) {
+    return storedSettings instanceof String && ((String) storedSettings).startsWith(HEADER_PREFIX);
+  }
+
+  private final int pageSize;
+  private final Map<Integer, List<String>> pages = Maps.newConcurrentMap();
+  private final Set<Integer> modifiedPages = Sets.newTreeSet();
+
+  private final int storedSize;
+  private final boolean migrating;
+  private int size;
+  private int readablePageCount;
+
+  /**
+   * Opens the paged settings of the specified header.
+   */
+  PagedSettingsList(PluginSettings pluginSettings, String storageKey, String header) {
+    super(pluginSettings, storageKey);
+    String[] pageSizeAndSize = header.substring(HEADER_PREFIX.length()).split(":");
+    this.pageSize = Integer.parseInt(pageSizeAndSize[0]);
+    this.storedSize = Integer.parseInt(pageSizeAndSize[1]);
+    this.migrating = false;
+    this.size = storedSize;
+    this.readablePageCount = getPageCount(storedSize);
+  }
+
+  /**
+   * Opens the settings stored as the specified single list (or not stored yet if the list is
+   * empty) as paged settings of the specified page size.
+   */
+  PagedSettingsList(PluginSettings pluginSettings, String storageKey, int pageSize,
+                    List<String> settingsList) {
+    super(pluginSettings, storageKey);
+    this.pageSize = pageSize;
+    this.storedSize = 0;
+    this.migrating = !settingsList.isEmpty();
+    this.size = settingsList.size();
+    List<List<String>> partitions = Lists.partition(settingsList, pageSize);
+    for (int pageIndex = 0; pageIndex < partitions.size(); pageIndex++) {
+      pages.put(pageIndex, Lists.newArrayList(partitions.get(pageIndex)));
+    }
+  }
+
+  private PagedSettingsList(PagedSettingsList settingsList) {
+    super(settingsList);
+    this.pageSize = settingsList.pageSize;
+    this.storedSize = settingsList.storedSize;
+    this.migrating = settingsList.migrating;
+    this.size = settingsList.size;
+    this.readablePageCount = settingsList.readablePageCount;
+    // Only the pages read so far are copied, the others are read as they're stored.
+    settingsList.pages.forEach((pageIndex, page) -> pages.put(pageIndex, Lists.newArrayList(page)));
+    this.modifiedPages.addAll(settingsList.modifiedPages);
+  }
+
+  int getPageSize() {
+    return pageSize;
+  }
+
+  private String getPageKey(int pageIndex) {
+    return storageKey + ":page:" + pageIndex;
+  }
+
+  private int getPageCount(int size) {
+    return (size + pageSize - 1) / pageSize;
+  }
+
+  private List<String> getPage(int pageIndex) {
+    return pages.computeIfAbsent(pageIndex, this::readPage);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> readPage(int pageIndex) {
+    // Pages beyond the stored ones are not to be read, they're new.
+    List<String> page = pageIndex < readablePageCount ? (List<String>) pluginSettings.get(getPageKey(pageIndex)) : null;
+    return page != null ? Lists.newArrayList(page) : Lists.newArrayList();
+  }
+
+  private List<String> getModifiedPage(int pageIndex) {
+    modifiedPages.add(pageIndex);
+    return getPage(pageIndex);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String get(int index) {
+    checkElementIndex(index, size);
+    return getPage(index / pageSize).get(index % pageSize);
+  }
+
+  @Override
+  public String set(int index, String settingsJson) {
+    checkElementIndex(index, size);
+    String returnValue = getModifiedPage(index / pageSize).set(index % pageSize, settingsJson);
+    setModified();
+    return returnValue;
+  }
+
+  @Override
+  public void add(int index, String settingsJson) {
+    checkPositionIndex(index, size);
+    int pageIndex = index / pageSize;
+    List<String> page = getModifiedPage(pageIndex);
+    page.add(index % pageSize, settingsJson);
+    // Unless added to the end, shift the overflowing last settings of each page to the next page.
+    while (page.size() > pageSize) {
+      List<String> nextPage = getModifiedPage(++pageIndex);
+      nextPage.add(0, page.remove(pageSize));
+      page = nextPage;
+    }
+    size++;
+    setModified();
+  }
+
+  @Override
+  public String remove(int index) {
+    checkElementIndex(index, size);
+    int pageIndex = index / pageSize;
+    List<String> page = getModifiedPage(pageIndex);
+    String returnValue = page.remove(index % pageSize);
+    // Unless removed from the end, shift the first settings of each later page to the page before.
+    for (int nextPageIndex = pageIndex + 1; nextPageIndex < getPageCount(size); nextPageIndex++) {
+      List<String> nextPage = getModifiedPage(nextPageIndex);
+      page.add(nextPage.remove(0));
+      page = nextPage;
+    }
+    size--;
+    setModified();
+    return returnValue;
+  }
+
+  @Override
+  public void clear() {
+    pages.clear();
+    modifiedPages.clear();
+    size = 0;
+    readablePageCount = 0;
+    setModified();
+  }
+
+  /**
+   * Streams the settings reading a page at a time, from the page of the specified index, the pages
+   * that are not read yet are not kept.
+   */
+  @Override
+  Stream<String> streamOnce(int fromIndex) {
+    int firstPageIndex = fromIndex / pageSize;
+    return IntStream.range(firstPageIndex, getPageCount(size)).boxed()
+        .flatMap(pageIndex -> {
+          List<String> page = pages.get(pageIndex);
+          return (page != null ? page : readPage(pageIndex)).stream();
+        })
+        .skip(fromIndex - (long) firstPageIndex * pageSize);
+  }
+
+  @Override
+  StoredSettingsList copy() {
+    return new PagedSettingsList(this);
+  }
+
+  @Override
+  void flush() {
+    if (!isModified()) {
+      return;
+    }
+    int pageCount = getPageCount(size);
+    if (migrating) {
+      for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+        modifiedPages.add(pageIndex);
+      }
+    }
+
+    for (int pageIndex : modifiedPages) {
+      if (pageIndex < pageCount) {
+        pluginSettings.put(getPageKey(pageIndex), pages.get(pageIndex));
+      }
+    }
+    for (int pageIndex = pageCount; pageIndex < getPageCount(storedSize); pageIndex++) {
+      pluginSettings.remove(getPageKey(pageIndex));
+    }
+
+    if (isDeleted() && size == 0) {
+      pluginSettings.remove(storageKey);
+    } else if (migrating || size != storedSize || storedSize == 0) {
+      pluginSettings.put(storageKey, HEADER_PREFIX + pageSize + ":" + size);
+    }
+  }
+
+}
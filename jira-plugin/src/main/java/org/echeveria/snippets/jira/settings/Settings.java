@@ -23,7 +23,7 @@
 
 package org.echeveria.snippets.jira.settings;
 
-import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * The base class for all settings types, your settings POJO should be sub-classing this class.
@@ -32,6 +32,8 @@ public abstract class Settings<T> {
 
   private final String settingsKey;
   private T settingsId;
+  @Nullable
+  private Integer schemaVersion;
 
   protected Settings(String settingsKey, T settingsId) {
     this.settingsKey = settingsKey;
@@ -69,10 +71,24 @@ public abstract class Settings<T> {
    */
   public abstract boolean isNewIn(SettingsManager settingsManager);
 
+  /**
+   * Returns the schema version of this settings, which is 0 unless migrations of the settings type
+   * have been registered, see
+   * {@link SettingsManager#registerMigration(Class, int, java.util.function.UnaryOperator)}.
+   * @return the schema version of this settings
+   */
+  public int getSchemaVersion() {
+    return schemaVersion != null ? schemaVersion : 0;
+  }
+
   void setSettingsId(T settingsId) {
     this.settingsId = settingsId;
   }
 
+  void setSchemaVersion(int schemaVersion) {
+    this.schemaVersion = schemaVersion;
+  }
+
   public static class Sequenced extends Settings<Integer> {
 
     public static Sequenced create(String settingsKey) {
@@ -94,28 +110,46 @@ public abstract class Settings<T> {
 
     @Override
     public boolean isNewIn(SettingsManager settingsManager) {
-      if (!settingsManager.hasSettings(getSettingsKey())) {
-        return true;
-      }
-
-      List<?> settingsList = settingsManager.getAllSettings(getSettingsKey(), getClass());
-      if (settingsList == null) {
-        return true;
-      }
-
-      Object settings = null;
-      try {
-        // The settings ID (in this implementation, the index in the list of the settings of the
-        // same type) may have been assigned at this point, for the settings to be save by using
-        // the set(index, e) of java.util.List.
-        // But to notice that having a "legitimate" index doesn't mean it's saved in the list, so
-        // we should query the list with the index to determine whether it's really new (in list).
-        settings = settingsList.get(getSettingsId());
-      } catch (IndexOutOfBoundsException e) {
-        return true;
-      }
-
-      return settings == null;
+      // The settings ID (in this implementation, the index in the list of the settings of the
+      // same type) may have been assigned at this point, for the settings to be save by using
+      // the set(index, e) of java.util.List.
+      // But to notice that having a "legitimate" index doesn't mean it's saved in the list, so
+      // we should query the settings manager with the index to determine whether it's really new
+      // (in list), which only takes the size of the list rather than deserializing it.
+      return !settingsManager.hasSettings(getSettingsKey(), getSettingsId());
+    }
+
+  }
+
+  /**
+   * The settings of which the settings ID is a stable key, rather than the index in the list of the
+   * settings of the same kind, so that removing settings doesn't change the IDs of the others, and
+   * the settings are read, updated and removed by their IDs directly.
+   *
+   * A random UUID is assigned to the settings that are saved without a settings ID.
+   */
+  public static class Keyed extends Settings<String> {
+
+    public static Keyed create(String settingsKey) {
+      return new Keyed(settingsKey, null);
+    }
+
+    public static Keyed create(String settingsKey, String settingsId) {
+      return new Keyed(settingsKey, settingsId);
+    }
+
+    protected Keyed(String settingsKey, @Nullable String settingsId) {
+      super(settingsKey, settingsId);
+    }
+
+    @Override
+    public boolean isNew() {
+      return getSettingsId() == null;
+    }
+
+    @Override
+    public boolean isNewIn(SettingsManager settingsManager) {
+      return isNew() || !settingsManager.hasSettings(getSettingsKey(), getSettingsId());
     }
 
   }
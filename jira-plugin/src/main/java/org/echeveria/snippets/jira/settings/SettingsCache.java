@@ -0,0 +1,323 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A bounded cache of the settings of the settings keys, holding for each settings key the stored
+ * (serialized) settings, so that reading the same settings key over and over doesn't go to the
+ * plugin settings again.
+ *
+ * The settings objects are deserialized from the stored settings afresh for each reader, so that
+ * one reader modifying its settings objects without saving them is never seen by the others.
+ */
+class SettingsCache {
+
+  private final Cache<String, Entry> cache;
+
+  SettingsCache(int maximumSize) {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .build();
+  }
+
+  /**
+   * Returns the cached settings of the specified settings key, loading them with the specified
+   * loader if they are not cached yet. The list from the loader is kept as it is and is not to be
+   * modified afterwards, nor is it to read what it holds lazily from the plugin settings.
+   *
+   * @param settingsKey of the settings
+   * @param loader to load the stored settings if they are not cached yet
+   * @return the cached settings
+   */
+  Entry get(String settingsKey, Supplier<List<String>> loader) {
+    try {
+      return cache.get(settingsKey, () -> newEntry(loader.get(), null));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the cached settings of the specified settings key, or null if they are not cached.
+   *
+   * @param settingsKey of the settings
+   * @return the cached settings, or null if they are not cached
+   */
+  @Nullable
+  Entry getIfPresent(String settingsKey) {
+    return cache.getIfPresent(settingsKey);
+  }
+
+  private static Entry newEntry(List<String> settingsList, @Nullable Entry previousEntry) {
+    if (settingsList instanceof KeyedSettingsList) {
+      KeyedEntry previousKeyedEntry = previousEntry instanceof KeyedEntry ? (KeyedEntry) previousEntry : null;
+      return new KeyedEntry((KeyedSettingsList) settingsList, previousKeyedEntry);
+    }
+    return new Entry(settingsList);
+  }
+
+  /**
+   * Replaces the cached settings of the specified settings key with the specified keyed settings
+   * just written, rather than reading them again, and updates the indexes of the settings from the
+   * changed settings alone.
+   *
+   * @param settingsKey of the settings
+   * @param settingsList the keyed settings just written, which are not to be modified afterwards
+   */
+  void refresh(String settingsKey, KeyedSettingsList settingsList) {
+    cache.put(settingsKey, newEntry(settingsList, cache.getIfPresent(settingsKey)));
+  }
+
+  void invalidate(String settingsKey) {
+    cache.invalidate(settingsKey);
+  }
+
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * The stored settings of a settings key, and the indexes of them by the indexed fields of the
+   * settings classes they're read as.
+   */
+  static class Entry {
+
+    protected final List<String> settingsList;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Field, ListMultimap<Object, String>>> indexes =
+        Maps.newConcurrentMap();
+
+    private Entry(List<String> settingsList) {
+      this.settingsList = Collections.unmodifiableList(settingsList);
+    }
+
+    int size() {
+      return settingsList.size();
+    }
+
+    List<String> getSettingsList() {
+      return settingsList;
+    }
+
+    <T> T get(int index, Function<String, T> decoder) {
+      return decoder.apply(settingsList.get(index));
+    }
+
+    <T> List<T> getAll(Function<String, T> decoder) {
+      return decodeAll(settingsList, decoder);
+    }
+
+    /**
+     * Returns the settings objects of which the specified indexed field has the specified value,
+     * the index of the field is built from the settings deserialized by the decoder on the first
+     * lookup.
+     */
+    <T> List<T> findBy(Field field, Object value, Class<T> classOfT, Function<String, T> decoder) {
+      ListMultimap<Object, String> index = indexes
+          .computeIfAbsent(classOfT, key -> Maps.newConcurrentMap())
+          .computeIfAbsent(field, key -> SettingsIndexes.index(settingsList, decoder, field));
+      return decodeAll(index.get(value), decoder);
+    }
+
+    /**
+     * The settings are deserialized as the stream is consumed, and are not kept.
+     */
+    <T> Stream<T> stream(Function<String, T> decoder) {
+      return settingsList.stream().map(decoder);
+    }
+
+    <T> List<T> getPage(Function<String, T> decoder, int offset, int limit) {
+      int fromIndex = Math.min(offset, settingsList.size());
+      int toIndex = (int) Math.min((long) offset + limit, settingsList.size());
+      return decodeAll(settingsList.subList(fromIndex, toIndex), decoder);
+    }
+
+    private static <T> List<T> decodeAll(Collection<String> storedSettings, Function<String, T> decoder) {
+      return Collections.unmodifiableList(storedSettings.stream()
+          .map(decoder)
+          .collect(Collectors.toList()));
+    }
+
+  }
+
+  /**
+   * The stored settings of a keyed settings key, by settings ID, of which the indexes are updated
+   * from the changed settings as the settings are written, rather than built again.
+   */
+  static class KeyedEntry extends Entry {
+
+    private final Map<String, String> settingsMap;
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Field, KeyedIndex>> keyedIndexes = Maps.newConcurrentMap();
+
+    private KeyedEntry(KeyedSettingsList settingsList, @Nullable KeyedEntry previousEntry) {
+      super(settingsList);
+      this.settingsMap = Collections.unmodifiableMap(settingsList.getSettingsMap());
+      Set<String> changedSettingsIds = settingsList.getChangedSettingsIds();
+      if (previousEntry != null && previousEntry.isUnchangedExcept(settingsMap, changedSettingsIds)) {
+        previousEntry.keyedIndexes.forEach((classOfT, previousIndexes) -> {
+          ConcurrentMap<Field, KeyedIndex> indexes = Maps.newConcurrentMap();
+          previousIndexes.forEach((field, previousIndex) -> {
+            KeyedIndex index = previousIndex.update(settingsMap, changedSettingsIds);
+            if (index != null) {
+              indexes.put(field, index);
+            }
+          });
+          keyedIndexes.put(classOfT, indexes);
+        });
+      }
+    }
+
+    /**
+     * Returns true if the settings are the same as the specified settings but for the specified
+     * settings IDs, i.e. they have not been changed by another node since they were cached.
+     */
+    private boolean isUnchangedExcept(Map<String, String> settingsMap, Set<String> changedSettingsIds) {
+      int unchanged = 0;
+      for (Map.Entry<String, String> entry : settingsMap.entrySet()) {
+        if (!changedSettingsIds.contains(entry.getKey())) {
+          if (!entry.getValue().equals(this.settingsMap.get(entry.getKey()))) {
+            return false;
+          }
+          unchanged++;
+        }
+      }
+      return unchanged == Sets.difference(this.settingsMap.keySet(), changedSettingsIds).size();
+    }
+
+    /**
+     * Unlike the indexes of sequenced settings, the settings found are in no particular order.
+     */
+    @Override
+    <T> List<T> findBy(Field field, Object value, Class<T> classOfT, Function<String, T> decoder) {
+      KeyedIndex index = keyedIndexes
+          .computeIfAbsent(classOfT, key -> Maps.newConcurrentMap())
+          .computeIfAbsent(field, key -> KeyedIndex.build(settingsMap, decoder, field));
+      return Entry.decodeAll(Collections2.transform(index.getSettingsIds(value), settingsMap::get), decoder);
+    }
+
+    boolean contains(String settingsId) {
+      return settingsMap.containsKey(settingsId);
+    }
+
+    @Nullable
+    <T> T get(String settingsId, Function<String, T> decoder) {
+      String encodedSettings = settingsMap.get(settingsId);
+      return encodedSettings != null ? decoder.apply(encodedSettings) : null;
+    }
+
+  }
+
+  /**
+   * The index of keyed settings by the values of an indexed field, which keeps the decoder of the
+   * settings so that it's updated by deserializing the changed settings alone.
+   */
+  private static final class KeyedIndex {
+
+    private final Field field;
+    private final Function<String, ?> decoder;
+    private final Map<String, Object> valuesById;
+    private final SetMultimap<Object, String> settingsIdsByValue;
+
+    private KeyedIndex(Field field, Function<String, ?> decoder, Map<String, Object> valuesById,
+                       SetMultimap<Object, String> settingsIdsByValue) {
+      this.field = field;
+      this.decoder = decoder;
+      this.valuesById = valuesById;
+      this.settingsIdsByValue = settingsIdsByValue;
+    }
+
+    static KeyedIndex build(Map<String, String> settingsMap, Function<String, ?> decoder, Field field) {
+      KeyedIndex index = new KeyedIndex(field, decoder, Maps.newHashMap(), LinkedHashMultimap.create());
+      settingsMap.forEach(index::put);
+      return index;
+    }
+
+    private void put(String settingsId, String storedSettings) {
+      Object value = SettingsIndexes.getValue(decoder.apply(storedSettings), field);
+      if (value != null) {
+        valuesById.put(settingsId, value);
+        settingsIdsByValue.put(value, settingsId);
+      }
+    }
+
+    /**
+     * Returns a copy of the index updated with the specified changed settings of the specified
+     * settings, or null if the changed settings cannot be deserialized, so that the index is built
+     * again as it's next looked up rather than failing the write.
+     */
+    @Nullable
+    KeyedIndex update(Map<String, String> settingsMap, Set<String> changedSettingsIds) {
+      KeyedIndex index = new KeyedIndex(field, decoder, Maps.newHashMap(valuesById),
+          LinkedHashMultimap.create(settingsIdsByValue));
+      try {
+        for (String settingsId : changedSettingsIds) {
+          Object value = index.valuesById.remove(settingsId);
+          if (value != null) {
+            index.settingsIdsByValue.remove(value, settingsId);
+          }
+          String storedSettings = settingsMap.get(settingsId);
+          if (storedSettings != null) {
+            index.put(settingsId, storedSettings);
+          }
+        }
+      } catch (RuntimeException e) {
+        return null;
+      }
+      return index;
+    }
+
+    Set<String> getSettingsIds(Object value) {
+      return settingsIdsByValue.get(value);
+    }
+
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import javax.annotation.Nullable;
+
+/**
+ * A change of the settings of a settings key in the change feed of a settings manager, see
+ * {@link SettingsManager#awaitChanges(long, long, java.util.concurrent.TimeUnit)}.
+ */
+public final class SettingsChange {
+
+  private final String settingsKey;
+  @Nullable
+  private final String settingsId;
+  private final long version;
+
+  SettingsChange(String settingsKey, @Nullable String settingsId, long version) {
+    this.settingsKey = settingsKey;
+    this.settingsId = settingsId;
+    this.version = version;
+  }
+
+  /**
+   * Returns the settings key of the changed settings.
+   * @return the settings key of the changed settings
+   */
+  public String getSettingsKey() {
+    return settingsKey;
+  }
+
+  /**
+   * Returns the settings ID of the changed keyed settings, or null if any of the settings of the
+   * settings key may have changed, as for sequenced settings.
+   * @return the settings ID of the changed keyed settings, or null
+   */
+  @Nullable
+  public String getSettingsId() {
+    return settingsId;
+  }
+
+  /**
+   * Returns the version of the change, which is one more than the version of the previous change in
+   * the same change feed.
+   * @return the version of the change
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[settingsKey=" + settingsKey + ", settingsId=" + settingsId
+        + ", version=" + version + "]";
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The latest changes of the settings of a settings manager, kept in a ring of a fixed size, so that
+ * the clients following the changes can resume from the last change they've seen, as long as they
+ * haven't fallen too far behind.
+ */
+final class SettingsChangeFeed {
+
+  private final SettingsChange[] changes;
+  private long lastVersion;
+
+  SettingsChangeFeed(int size) {
+    this.changes = new SettingsChange[size];
+  }
+
+  synchronized void publish(String settingsKey, @Nullable String settingsId) {
+    lastVersion++;
+    changes[(int) (lastVersion % changes.length)] = new SettingsChange(settingsKey, settingsId, lastVersion);
+    notifyAll();
+  }
+
+  synchronized long getLastVersion() {
+    return lastVersion;
+  }
+
+  /**
+   * Returns the changes after the specified version, waiting for the next change up to the specified
+   * timeout if there are none yet.
+   *
+   * @return the changes after the version, which are empty if there are none before the timeout, or
+   *         null if they're no longer kept, or the version is not of this feed
+   */
+  @Nullable
+  synchronized List<SettingsChange> awaitChanges(long version, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    if (version < 0 || version > lastVersion) {
+      return null;
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    long remaining;
+    while (version == lastVersion && (remaining = deadline - System.nanoTime()) > 0) {
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    if (lastVersion - version > changes.length) {
+      return null;
+    }
+    List<SettingsChange> newChanges = Lists.newArrayListWithCapacity((int) (lastVersion - version));
+    for (long changeVersion = version + 1; changeVersion <= lastVersion; changeVersion++) {
+      newChanges.add(changes[(int) (changeVersion % changes.length)]);
+    }
+    return newChanges;
+  }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.EventObject;
+
+/**
+ * Published by a settings manager after the settings of a settings key have been changed, so that
+ * other settings managers (and other components) of the same plugin can drop what they have cached
+ * of the settings key.
+ */
+public class SettingsChangedEvent extends EventObject {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String pluginKey;
+  private final String settingsKey;
+
+  public SettingsChangedEvent(SettingsManager source, String pluginKey, String settingsKey) {
+    super(source);
+    this.pluginKey = pluginKey;
+    this.settingsKey = settingsKey;
+  }
+
+  /**
+   * Returns the plugin key of the settings manager that changed the settings.
+   * @return the plugin key of the settings manager that changed the settings
+   */
+  public String getPluginKey() {
+    return pluginKey;
+  }
+
+  /**
+   * Returns the settings key of the changed settings.
+   * @return the settings key of the changed settings
+   */
+  public String getSettingsKey() {
+    return settingsKey;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[pluginKey=" + pluginKey + ", settingsKey=" + settingsKey + "]";
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries the settings keys of the settings changed on a node of a cluster to the settings managers
+ * of the same plugin on the other nodes, so that they drop what they have cached of the settings
+ * right away rather than as they next check the version stamps, see
+ * {@link SettingsManager#setClusterChannel(SettingsClusterChannel)}.
+ *
+ * On Jira Data Center, it's typically backed by the cluster messaging service, with a channel of
+ * its own for each plugin.
+ */
+public interface SettingsClusterChannel {
+
+  /**
+   * Tells the other nodes that the settings of the specified settings key have been changed, it
+   * should not block for long.
+   *
+   * @param settingsKey of the changed settings
+   */
+  void send(String settingsKey);
+
+  /**
+   * Sets the receiver of the settings keys of the settings changed on the other nodes, which is
+   * not to be called with the settings keys sent by this node.
+   *
+   * @param receiver of the settings keys of the settings changed on the other nodes
+   */
+  void setReceiver(Consumer<String> receiver);
+
+}
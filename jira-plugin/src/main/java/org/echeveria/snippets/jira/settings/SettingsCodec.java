@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+/**
+ * Encodes settings objects into the strings stored in the plugin settings and decodes them back.
+ *
+ * The strings encoded by a codec start with the marker of the codec, so that the settings encoded
+ * in different formats (or different versions of a format) can be told apart and decoded when they
+ * are mixed in the settings of the same settings key. The empty marker is reserved for JSON, which
+ * the settings that are not marked are decoded as.
+ */
+public interface SettingsCodec {
+
+  /**
+   * Returns the marker that the strings encoded by this codec start with.
+   * @return the marker that the strings encoded by this codec start with
+   */
+  String getMarker();
+
+  /**
+   * Encodes the specified settings object, the encoded string starts with the marker.
+   *
+   * @param settings to be encoded
+   * @return the encoded settings
+   */
+  String encode(Object settings);
+
+  /**
+   * Decodes the specified string, which starts with the marker, into an object of the specified
+   * class. Decoding into a {@link com.google.gson.JsonElement} should be supported regardless of
+   * the class the settings were encoded from.
+   *
+   * @param encodedSettings to be decoded
+   * @param classOfT of the settings object
+   * @param <T> the type of the settings object
+   * @return the decoded settings object
+   */
+  <T> T decode(String encodedSettings, Class<T> classOfT);
+
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses encoded settings with Deflate, Base64-encoded after the marker, preceded by the length
+ * of the encoded settings so that they're inflated at once into an array of the right size.
+ *
+ * Inflaters and deflaters hold native memory that's only released as they're ended or finalized,
+ * they're pooled rather than created for each settings.
+ */
+final class SettingsCompression {
+
+  /**
+   * The marker of compressed settings, which are otherwise encoded by any codec.
+   */
+  static final String MARKER = "~z1:";
+
+  /**
+   * The most that Deflate ever compresses data by, beyond which the length preceding compressed
+   * settings is corrupted rather than allocated.
+   */
+  private static final int MAX_COMPRESSION_RATIO = 1032;
+
+  private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+  private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+  private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  static boolean isCompressed(String encodedSettings) {
+    return encodedSettings.startsWith(MARKER);
+  }
+
+  /**
+   * Returns the specified encoded settings compressed, or as they are if compressing them does not
+   * make them any smaller.
+   */
+  String compress(String encodedSettings) {
+    byte[] bytes = encodedSettings.getBytes(StandardCharsets.UTF_8);
+    byte[] output = new byte[bytes.length + Integer.BYTES];
+    ByteBuffer.wrap(output).putInt(bytes.length);
+    int length = Integer.BYTES;
+
+    Deflater deflater = deflaters.poll();
+    if (deflater == null) {
+      deflater = new Deflater();
+    }
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      while (!deflater.finished() && length < output.length) {
+        length += deflater.deflate(output, length, output.length - length);
+      }
+      if (!deflater.finished()) {
+        return encodedSettings;
+      }
+    } finally {
+      deflater.reset();
+      if (!deflaters.offer(deflater)) {
+        deflater.end();
+      }
+    }
+
+    String compressedSettings = MARKER + Base64.getEncoder().encodeToString(Arrays.copyOf(output, length));
+    return compressedSettings.length() < encodedSettings.length() ? compressedSettings : encodedSettings;
+  }
+
+  String decompress(String compressedSettings) {
+    byte[] input = Base64.getDecoder().decode(compressedSettings.substring(MARKER.length()));
+    int size = input.length < Integer.BYTES ? -1 : ByteBuffer.wrap(input).getInt();
+    if (size < 0 || size > (long) (input.length - Integer.BYTES) * MAX_COMPRESSION_RATIO) {
+      throw new IllegalStateException("The compressed settings are corrupted.");
+    }
+    byte[] bytes = new byte[size];
+
+    Inflater inflater = inflaters.poll();
+    if (inflater == null) {
+      inflater = new Inflater();
+    }
+    try {
+      inflater.setInput(input, Integer.BYTES, input.length - Integer.BYTES);
+      int length = 0;
+      while (length < bytes.length && !inflater.finished()) {
+        int inflated = inflater.inflate(bytes, length, bytes.length - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += inflated;
+      }
+      if (length < bytes.length) {
+        throw new IllegalStateException("The compressed settings are truncated.");
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("The compressed settings are corrupted.", e);
+    } finally {
+      inflater.reset();
+      if (!inflaters.offer(inflater)) {
+        inflater.end();
+      }
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+}
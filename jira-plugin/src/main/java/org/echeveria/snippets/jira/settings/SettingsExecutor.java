@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the operations of the asynchronous settings API on a bounded number of threads, or on
+ * virtual threads a bounded number at a time when running on Java 21 and later.
+ *
+ * The operations are ordered by settings key: an operation runs once the writes submitted earlier
+ * for its settings keys have completed, whether they succeeded or not, so that the writes of a
+ * settings key are made in the order they're submitted, and the reads see the writes submitted
+ * before them. The operations of different settings keys run in parallel.
+ */
+final class SettingsExecutor {
+
+  private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
+  private final ExecutorService executor;
+  @Nullable
+  private final Semaphore permits;
+  private final Map<String, CompletableFuture<?>> lastWrites = Maps.newHashMap();
+
+  SettingsExecutor(String name, int parallelism) {
+    ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+    if (virtualThreadExecutor != null) {
+      this.executor = virtualThreadExecutor;
+      this.permits = new Semaphore(parallelism);
+    } else {
+      ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(parallelism, parallelism,
+          60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+              .setNameFormat(name + "-%d")
+              .setDaemon(true)
+              .build());
+      threadPoolExecutor.allowCoreThreadTimeOut(true); // Not to keep idle threads of a disabled plugin
+      this.executor = threadPoolExecutor;
+      this.permits = null;
+    }
+  }
+
+  @Nullable
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null; // Before Java 21
+    }
+  }
+
+  /**
+   * Runs the specified write of the specified settings keys after the writes submitted earlier for
+   * any of the settings keys.
+   */
+  <T> CompletableFuture<T> submitWrite(Collection<String> settingsKeys, Supplier<T> operation) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    CompletableFuture<?> previousWrites;
+    synchronized (lastWrites) {
+      previousWrites = getLastWrites(settingsKeys);
+      settingsKeys.forEach(settingsKey -> lastWrites.put(settingsKey, future));
+    }
+    previousWrites.whenComplete((result, e) -> execute(operation, future));
+    future.whenComplete((result, e) -> {
+      synchronized (lastWrites) {
+        settingsKeys.forEach(settingsKey -> lastWrites.remove(settingsKey, future));
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Runs the specified read of the specified settings key after the writes submitted earlier for
+   * the settings key.
+   */
+  <T> CompletableFuture<T> submitRead(String settingsKey, Supplier<T> operation) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    CompletableFuture<?> previousWrites;
+    synchronized (lastWrites) {
+      previousWrites = getLastWrites(Collections.singleton(settingsKey));
+    }
+    previousWrites.whenComplete((result, e) -> execute(operation, future));
+    return future;
+  }
+
+  private CompletableFuture<?> getLastWrites(Collection<String> settingsKeys) {
+    CompletableFuture<?>[] writes = settingsKeys.stream()
+        .map(lastWrites::get)
+        .filter(Objects::nonNull)
+        .distinct()
+        .toArray(CompletableFuture[]::new);
+    return writes.length == 0 ? COMPLETED : writes.length == 1 ? writes[0] : CompletableFuture.allOf(writes);
+  }
+
+  /**
+   * Lets the operations already running or queued complete, and rejects the operations that are
+   * run afterwards, which fail their futures. The threads are let go once the operations complete.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  private <T> void execute(Supplier<T> operation, CompletableFuture<T> future) {
+    try {
+      executor.execute(() -> {
+        if (permits != null) {
+          permits.acquireUninterruptibly();
+        }
+        try {
+          future.complete(operation.get());
+        } catch (Throwable e) {
+          future.completeExceptionally(e);
+        } finally {
+          if (permits != null) {
+            permits.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Sets;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * The export of the settings of a settings manager as newline-delimited JSON, and the import of
+ * it, see {@link SettingsManager#exportSettings(Writer)}.
+ */
+final class SettingsExport {
+
+  /**
+   * The number of the imported settings that are written in a batch.
+   */
+  private static final int IMPORT_BATCH_SIZE = 500;
+
+  private final SettingsManager settingsManager;
+
+  SettingsExport(SettingsManager settingsManager) {
+    this.settingsManager = settingsManager;
+  }
+
+  /**
+   * Writes the settings of every settings key in the manifest, a line for each settings, see
+   * {@link SettingsManager#exportSettings(Writer)}.
+   */
+  int write(Writer writer) throws IOException {
+    int exported = 0;
+    for (String settingsKey : settingsManager.getManifest()) {
+      SettingsManager.UncachedSettings settings = settingsManager.openUncachedSettings(settingsKey);
+      if (settings.isKeyed()) {
+        for (Map.Entry<String, String> entry : settings.getSettingsMap().entrySet()) {
+          writeLine(writer, settingsKey, entry.getKey(), entry.getValue());
+          exported++;
+        }
+      } else {
+        Iterator<String> iterator = settings.stream(0).iterator();
+        while (iterator.hasNext()) {
+          writeLine(writer, settingsKey, null, iterator.next());
+          exported++;
+        }
+      }
+    }
+    return exported;
+  }
+
+  private static void writeLine(Writer writer, String settingsKey, @Nullable String settingsId,
+                                String encodedSettings) throws IOException {
+    JsonObject line = new JsonObject();
+    line.addProperty("settingsKey", settingsKey);
+    if (settingsId != null) {
+      line.addProperty("settingsId", settingsId);
+    }
+    line.addProperty("settings", encodedSettings);
+    writer.write(line.toString());
+    writer.write('\n');
+  }
+
+  /**
+   * Reads the settings written by {@link #write(Writer)} and replaces the settings of each settings
+   * key read with them, in batches, see {@link SettingsManager#importSettings(Reader)}. The lines
+   * are spooled to a temporary file as they're checked, so that no settings are replaced unless
+   * every line is settings as exported, in about the same memory however many there are.
+   */
+  int read(Reader reader) throws IOException {
+    Path spoolFile = Files.createTempFile("settings-import", ".ndjson");
+    try {
+      try (Writer spoolWriter = Files.newBufferedWriter(spoolFile, StandardCharsets.UTF_8)) {
+        check(reader, spoolWriter);
+      }
+      try (BufferedReader spoolReader = Files.newBufferedReader(spoolFile, StandardCharsets.UTF_8)) {
+        return replace(spoolReader);
+      }
+    } finally {
+      Files.deleteIfExists(spoolFile);
+    }
+  }
+
+  /**
+   * Checks that every line read is settings as exported, and writes the lines of the settings to
+   * the specified writer.
+   */
+  private static void check(Reader reader, Writer spoolWriter) throws IOException {
+    BufferedReader bufferedReader = reader instanceof BufferedReader
+        ? (BufferedReader) reader : new BufferedReader(reader);
+    JsonParser parser = new JsonParser();
+    Set<String> readSettingsKeys = Sets.newHashSet();
+    String settingsKey = null;
+    boolean keyed = false;
+    int lineNumber = 0;
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      JsonObject settings;
+      try {
+        settings = parser.parse(line).getAsJsonObject();
+      } catch (JsonParseException | IllegalStateException e) {
+        throw new IllegalArgumentException("Line " + lineNumber + " is not a JSON object.", e);
+      }
+      JsonElement lineSettingsKey = settings.get("settingsKey");
+      JsonElement encodedSettings = settings.get("settings");
+      JsonElement settingsId = settings.get("settingsId");
+      if (!isPrimitive(lineSettingsKey) || !isPrimitive(encodedSettings)
+          || (settingsId != null && !isPrimitive(settingsId))) {
+        throw new IllegalArgumentException("Line " + lineNumber + " has no settings key or settings.");
+      }
+
+      if (!lineSettingsKey.getAsString().equals(settingsKey)) {
+        settingsKey = lineSettingsKey.getAsString();
+        keyed = settingsId != null;
+        if (!readSettingsKeys.add(settingsKey)) {
+          throw new IllegalArgumentException("The settings of " + settingsKey + " are not on consecutive lines.");
+        }
+      } else if (keyed != (settingsId != null)) {
+        throw new IllegalArgumentException("Line " + lineNumber + " has keyed and sequenced settings of "
+            + settingsKey + ".");
+      }
+      spoolWriter.write(line);
+      spoolWriter.write('\n');
+    }
+  }
+
+  private static boolean isPrimitive(@Nullable JsonElement element) {
+    return element != null && element.isJsonPrimitive();
+  }
+
+  /**
+   * Replaces the settings of each settings key read with them, from the lines already checked.
+   */
+  private int replace(BufferedReader reader) throws IOException {
+    JsonParser parser = new JsonParser();
+    String settingsKey = null;
+    SettingsManager.Batch batch = null;
+    int batchSize = 0;
+    int imported = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      JsonObject settings = parser.parse(line).getAsJsonObject();
+      String lineSettingsKey = settings.get("settingsKey").getAsString();
+      String encodedSettings = settings.get("settings").getAsString();
+      JsonElement settingsId = settings.get("settingsId");
+
+      if (batch == null || batchSize >= IMPORT_BATCH_SIZE || !lineSettingsKey.equals(settingsKey)) {
+        if (batch != null) {
+          batch.commit();
+        }
+        batch = settingsManager.batch();
+        batchSize = 0;
+        if (!lineSettingsKey.equals(settingsKey)) {
+          settingsKey = lineSettingsKey;
+          batch.removeAll(settingsKey);
+        }
+      }
+      if (settingsId != null) {
+        batch.putEncoded(settingsKey, settingsId.getAsString(), encodedSettings);
+      } else {
+        batch.addEncoded(settingsKey, encodedSettings);
+      }
+      batchSize++;
+      imported++;
+    }
+    if (batch != null) {
+      batch.commit();
+    }
+    return imported;
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+
+/**
+ * The fields of the settings types that are marked {@link Indexed}, found once per class, and the
+ * indexes of the stored settings by the values of the fields.
+ */
+final class SettingsIndexes {
+
+  private static final ConcurrentMap<Class<?>, Map<String, Field>> indexedFieldsByClass = Maps.newConcurrentMap();
+
+  private SettingsIndexes() {
+  }
+
+  /**
+   * Returns the indexed field of the specified name of the specified class or its super classes.
+   *
+   * @param classOfT of the settings
+   * @param fieldName of the indexed field
+   * @return the indexed field
+   * @throws IllegalArgumentException if there is no indexed field of the name
+   */
+  static Field getIndexedField(Class<?> classOfT, String fieldName) {
+    Field field = indexedFieldsByClass.computeIfAbsent(classOfT, SettingsIndexes::findIndexedFields).get(fieldName);
+    if (field == null) {
+      throw new IllegalArgumentException("The field " + fieldName + " of " + classOfT.getName() + " is not indexed.");
+    }
+    return field;
+  }
+
+  private static Map<String, Field> findIndexedFields(Class<?> classOfT) {
+    Map<String, Field> indexedFields = Maps.newHashMap();
+    for (Class<?> clazz = classOfT; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (field.isAnnotationPresent(Indexed.class) && !indexedFields.containsKey(field.getName())) {
+          field.setAccessible(true);
+          indexedFields.put(field.getName(), field);
+        }
+      }
+    }
+    return ImmutableMap.copyOf(indexedFields);
+  }
+
+  /**
+   * Indexes the specified stored settings by the values of the specified field of the settings
+   * objects deserialized from them, the settings of which the field is null are not indexed.
+   *
+   * @param settingsList the stored settings to be indexed
+   * @param decoder to deserialize the settings objects, which are not kept
+   * @param field to index the settings by
+   * @return the stored settings by the values of the field, in the order of the settings
+   */
+  static ListMultimap<Object, String> index(List<String> settingsList, Function<String, ?> decoder, Field field) {
+    ImmutableListMultimap.Builder<Object, String> index = ImmutableListMultimap.builder();
+    for (String storedSettings : settingsList) {
+      Object value = getValue(decoder.apply(storedSettings), field);
+      if (value != null) {
+        index.put(value, storedSettings);
+      }
+    }
+    return index.build();
+  }
+
+  @Nullable
+  static Object getValue(Object settingsObject, Field field) {
+    try {
+      return field.get(settingsObject);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot index the field " + field.getName(), e);
+    }
+  }
+
+}
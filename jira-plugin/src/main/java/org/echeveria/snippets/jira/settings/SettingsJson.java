@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * The JSON of the stored settings of a settings manager, read and written without going through the
+ * settings objects, for the JSON API of the settings manager and the REST resource of the settings,
+ * see {@link SettingsManager#getSettingsJsonPage(String, int, int)}.
+ */
+final class SettingsJson {
+
+  private final SettingsManager settingsManager;
+
+  SettingsJson(SettingsManager settingsManager) {
+    this.settingsManager = settingsManager;
+  }
+
+  /**
+   * Returns the JSON of the specified stored settings, as it's stored if it's stored as JSON.
+   */
+  String toJson(String storedSettings) {
+    String encodedSettings = settingsManager.decompress(storedSettings);
+    SettingsCodec codec = settingsManager.getCodec(encodedSettings);
+    return codec instanceof GsonSettingsCodec
+        ? encodedSettings : codec.decode(encodedSettings, JsonElement.class).toString();
+  }
+
+  /**
+   * Encodes the specified JSON of settings as it's to be stored, stamped with the current schema
+   * version of the settings of the settings key as the settings objects are, and only compressed if
+   * needed.
+   */
+  String encode(String settingsKey, JsonObject settings) {
+    int schemaVersion = settingsManager.getSchemaVersion(settingsKey);
+    if (schemaVersion > 0) {
+      settings.addProperty(SettingsMigrations.SCHEMA_VERSION, schemaVersion);
+    }
+    return settingsManager.compress(settings.toString());
+  }
+
+  /**
+   * Adds the specified settings to the specified stored settings of the settings key, see
+   * {@link SettingsManager.Batch#addJson(String, JsonObject)}.
+   */
+  void add(String settingsKey, StoredSettingsList settingsList, JsonObject settings, boolean keyed) {
+    settings.addProperty("settingsKey", settingsKey);
+    if (keyed || settingsList instanceof KeyedSettingsList) {
+      KeyedSettingsList keyedSettingsList = settingsList.asKeyed();
+      String newSettingsId = keyed ? settings.get("settingsId").getAsString() : UUID.randomUUID().toString();
+      if (keyedSettingsList.containsId(newSettingsId)) {
+        throw new IllegalArgumentException("The settings " + newSettingsId + " already exist.");
+      }
+      settings.addProperty("settingsId", newSettingsId);
+      keyedSettingsList.putById(newSettingsId, encode(settingsKey, settings));
+    } else {
+      settings.addProperty("settingsId", settingsList.size());
+      settingsList.add(encode(settingsKey, settings));
+    }
+  }
+
+  /**
+   * Updates the existing settings of the settings ID in the specified settings, in the specified
+   * stored settings of the settings key, see
+   * {@link SettingsManager.Batch#updateJson(String, JsonObject)}.
+   */
+  void update(String settingsKey, StoredSettingsList settingsList, JsonObject settings, boolean keyed) {
+    JsonElement settingsId = settings.get("settingsId");
+    settings.addProperty("settingsKey", settingsKey);
+    String encodedSettings = encode(settingsKey, settings);
+    if (keyed) {
+      KeyedSettingsList keyedSettingsList = settingsList.asKeyed();
+      String storedSettings = keyedSettingsList.getById(settingsId.getAsString());
+      if (storedSettings == null) {
+        throw new IllegalArgumentException("Cannot update settings that does not exist yet.");
+      }
+      if (encodedSettings.equals(storedSettings)) {
+        settingsManager.getMetrics().writeSkipped();
+      } else {
+        keyedSettingsList.putById(settingsId.getAsString(), encodedSettings);
+      }
+    } else {
+      settingsList.checkSequenced();
+      int index = settingsId.getAsInt();
+      if (index < 0 || index >= settingsList.size()) {
+        throw new IllegalArgumentException("Cannot update settings that does not exist yet.");
+      }
+      if (encodedSettings.equals(settingsList.get(index))) {
+        settingsManager.getMetrics().writeSkipped();
+      } else {
+        settingsList.set(index, encodedSettings);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the specified settings ID is of keyed settings, i.e. a string.
+   */
+  static boolean isKeyedId(@Nullable JsonElement settingsId) {
+    return settingsId != null && settingsId.isJsonPrimitive() && settingsId.getAsJsonPrimitive().isString();
+  }
+
+}
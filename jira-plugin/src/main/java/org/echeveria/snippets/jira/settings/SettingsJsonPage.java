@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A page of the settings of a settings key as JSON, opened along with the tag of the settings it's
+ * a page of, see {@link SettingsManager#openSettingsJsonPage(String, int, int)}. The settings are
+ * read as the page is written, and the page can only be written once.
+ */
+public final class SettingsJsonPage {
+
+  private final String settingsKey;
+  private final int offset;
+  private final int total;
+  private final String tag;
+  private final Stream<String> settings;
+
+  SettingsJsonPage(String settingsKey, int offset, int total, String tag, Stream<String> settings) {
+    this.settingsKey = settingsKey;
+    this.offset = offset;
+    this.total = total;
+    this.tag = tag;
+    this.settings = settings;
+  }
+
+  /**
+   * Returns the tag of the settings as they were as the page was opened, see
+   * {@link SettingsManager#getSettingsTag(String)}.
+   * @return the tag of the settings on the page
+   */
+  public String getTag() {
+    return tag;
+  }
+
+  /**
+   * Returns the total number of the settings of the settings key as the page was opened.
+   * @return the total number of the settings
+   */
+  public int getTotal() {
+    return total;
+  }
+
+  /**
+   * Writes the page as a JSON object, along with the settings key, the offset and the total number
+   * of the settings, see {@link SettingsManager#writeSettingsPage(String, int, int, Writer)}.
+   *
+   * @param writer to write the page to, which is neither flushed nor closed
+   * @return the number of the settings written
+   * @throws IOException if the page cannot be written
+   * @throws java.util.ConcurrentModificationException if the settings stored in pages are changed
+   *         before all the pages of the page are read
+   */
+  public int write(Writer writer) throws IOException {
+    writer.write("{\"settingsKey\":" + new JsonPrimitive(settingsKey));
+    writer.write(",\"offset\":" + offset + ",\"total\":" + total + ",\"settings\":[");
+    int written = 0;
+    Iterator<String> iterator = settings.iterator();
+    while (iterator.hasNext()) {
+      if (written > 0) {
+        writer.write(',');
+      }
+      writer.write(iterator.next());
+      written++;
+    }
+    writer.write("]}");
+    return written;
+  }
+
+}
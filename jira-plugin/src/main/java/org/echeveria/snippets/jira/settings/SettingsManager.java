@@ -23,29 +23,92 @@
 
 package org.echeveria.snippets.jira.settings;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
 import com.atlassian.jira.component.ComponentAccessor;
 import com.atlassian.sal.api.pluginsettings.PluginSettings;
 import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.gson.Gson;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
 
 @SuppressWarnings({"unused", "unchecked"})
 public class SettingsManager {
 
+  private static final ConcurrentMap<String, SettingsManager> settingsManagers = Maps.newConcurrentMap();
+
+  /**
+   * Returns the settings manager of the specified plugin, which is created on the first call and
+   * shared by all the callers afterwards, along with its caches.
+   *
+   * @param pluginKey of the plugin that the settings belong to
+   * @return the shared settings manager of the plugin
+   */
   public static SettingsManager getOrCreate(String pluginKey) {
-    PluginSettingsFactory pluginSettingsFactory =
-            ComponentAccessor.getOSGiComponentInstanceOfType(PluginSettingsFactory.class);
-    PluginSettings pluginSettings = pluginSettingsFactory.createGlobalSettings();
-    return new SettingsManager(pluginSettings, pluginKey);
+    return settingsManagers.computeIfAbsent(pluginKey, key -> {
+      PluginSettingsFactory pluginSettingsFactory =
+              ComponentAccessor.getOSGiComponentInstanceOfType(PluginSettingsFactory.class);
+      PluginSettings pluginSettings = pluginSettingsFactory.createGlobalSettings();
+      EventPublisher eventPublisher = ComponentAccessor.getComponent(EventPublisher.class);
+      return new SettingsManager(pluginSettings, key, eventPublisher);
+    });
+  }
+
+  /**
+   * Forgets the shared settings manager of the specified plugin, e.g. as the plugin is disabled, so
+   * that the next {@link #getOrCreate(String)} creates a new one, and shuts it down, see
+   * {@link #shutdown()}.
+   *
+   * @param pluginKey of the plugin that the settings belong to
+   */
+  public static void release(String pluginKey) {
+    SettingsManager settingsManager = settingsManagers.remove(pluginKey);
+    if (settingsManager != null) {
+      settingsManager.shutdown();
+    }
   }
 
   public static SettingsManager getOrCreate(PluginSettingsFactory pluginSettingsFactory, String pluginKey) {
@@ -59,150 +122,1324 @@ public class SettingsManager {
 
   private static final Logger logger = LoggerFactory.getLogger(SettingsManager.class);
 
-  private static final Gson gson = new Gson();
+  /**
+   * The maximum number of settings keys of which the settings are cached.
+   */
+  private static final int SETTINGS_CACHE_SIZE = 64;
+
+  /**
+   * The number of locks that the settings keys are spread over, the settings keys sharing a lock
+   * are not changed at the same time.
+   */
+  private static final int SETTINGS_LOCK_STRIPES = 64;
+
+  /**
+   * The number of times the changes of a batch are applied when locking optimistically, before
+   * giving up.
+   */
+  private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+  /**
+   * The number of threads that the settings are read with as they're warmed up.
+   */
+  private static final int WARM_UP_THREADS = 4;
+
+  /**
+   * The number of the operations of the asynchronous API that run at once.
+   */
+  private static final int ASYNC_PARALLELISM = 8;
+
+  /**
+   * The number of the latest settings changes kept in the change feed.
+   */
+  private static final int CHANGE_FEED_SIZE = 1024;
 
   private final PluginSettings pluginSettings;
   private final String pluginKey;
   private final SettingsManifest manifest;
+  private final SettingsCache settingsCache;
+  private final Striped<Lock> settingsLocks;
+  private final ConcurrentMap<String, AtomicLong> settingsVersions;
+  @Nullable
+  private final EventPublisher eventPublisher;
+  private volatile int pageSize;
+  private volatile SettingsCodec settingsCodec;
+  private final List<SettingsCodec> settingsCodecs;
+  private final SettingsCompression compression = new SettingsCompression();
+  private volatile int compressionThreshold;
+  private volatile boolean optimisticLocking;
+  private final ConcurrentMap<String, StoredSettingsList> dirtySettings = Maps.newConcurrentMap();
+  private final AtomicInteger pendingChanges = new AtomicInteger();
+  private volatile boolean writeBehind;
+  private volatile int maxPendingChanges;
+  @Nullable
+  private ScheduledExecutorService flushScheduler;
+  private final SettingsMetrics metrics = new SettingsMetrics();
+  private volatile boolean warmedUp;
+  private volatile long versionCheckNanos = -1;
+  private final ConcurrentMap<String, VersionCheck> versionChecks = Maps.newConcurrentMap();
+  @Nullable
+  private volatile SettingsClusterChannel clusterChannel;
+  private volatile SettingsExecutor asyncExecutor;
+  private final SettingsMigrations migrations = new SettingsMigrations();
+  private final SettingsMigrator migrator = new SettingsMigrator(this);
+  private final SettingsJson json = new SettingsJson(this);
+  private final SettingsExport export = new SettingsExport(this);
+  private final String instanceTag = Long.toHexString(ThreadLocalRandom.current().nextLong());
+  private final SettingsChangeFeed changeFeed = new SettingsChangeFeed(CHANGE_FEED_SIZE);
 
   public SettingsManager(PluginSettings pluginSettings, String pluginKey) {
+    this(pluginSettings, pluginKey, null);
+  }
+
+  /**
+   * Creates a settings manager that publishes a {@link SettingsChangedEvent} through the specified
+   * event publisher whenever it changes the settings of a settings key.
+   *
+   * @param pluginSettings to store the settings in
+   * @param pluginKey of the plugin that the settings belong to
+   * @param eventPublisher to publish the settings changes through, or null to not publish them
+   */
+  public SettingsManager(PluginSettings pluginSettings, String pluginKey,
+                         @Nullable EventPublisher eventPublisher) {
     this.pluginSettings = pluginSettings;
     this.pluginKey = pluginKey;
     this.manifest = new SettingsManifest();
+    this.settingsCache = new SettingsCache(SETTINGS_CACHE_SIZE);
+    this.settingsLocks = Striped.lock(SETTINGS_LOCK_STRIPES);
+    this.settingsVersions = Maps.newConcurrentMap();
+    this.eventPublisher = eventPublisher;
+    this.settingsCodec = new GsonSettingsCodec();
+    this.settingsCodecs = new CopyOnWriteArrayList<>();
+    this.settingsCodecs.add(new BinarySettingsCodec());
+    this.settingsCodecs.add(settingsCodec);
   }
 
   public String getPluginKey() {
     return pluginKey;
   }
 
-  // Internal methods
+  /**
+   * Stores the settings of each settings key in pages of the specified number of settings rather
+   * than a single list, so that reading a page of the settings or adding settings does not read and
+   * write all settings of the same kind. The settings that are already stored as a single list
+   * are moved to pages the next time they're changed.
+   *
+   * The settings that are already stored in pages are always read and written in pages, whatever
+   * the page size currently is.
+   *
+   * @param pageSize the number of settings in a page, or 0 to store the settings in a single list
+   */
+  public void setPageSize(int pageSize) {
+    if (pageSize < 0) {
+      throw new IllegalArgumentException("The page size cannot be negative.");
+    }
+    this.pageSize = pageSize;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Encodes the settings to be saved with the specified codec, JSON by default. The settings that
+   * are already stored are still decoded with the codec of their marker, so the stored settings are
+   * encoded with the new codec one by one as they're saved again. The settings without a marker are
+   * decoded as JSON, unless a codec without a marker is specified in place of JSON.
+   *
+   * @param settingsCodec to encode the settings with
+   */
+  public void setSettingsCodec(SettingsCodec settingsCodec) {
+    String marker = settingsCodec.getMarker();
+    settingsCodecs.removeIf(codec -> codec.getMarker().equals(marker));
+    if (marker.isEmpty()) {
+      settingsCodecs.add(settingsCodec); // The fallback, it must be the last.
+    } else {
+      settingsCodecs.add(0, settingsCodec);
+    }
+    this.settingsCodec = settingsCodec;
+  }
+
+  /**
+   * Compresses the encoded settings of at least the specified number of characters as they're
+   * saved, e.g. the settings carrying large texts, so that they take less room in the plugin
+   * settings and in the cache. The settings that are already stored are decompressed as they're
+   * read whatever the threshold currently is.
+   *
+   * @param compressionThreshold the number of characters of the encoded settings to compress them
+   *        from, or 0 to not compress settings (by default)
+   */
+  public void setCompressionThreshold(int compressionThreshold) {
+    if (compressionThreshold < 0) {
+      throw new IllegalArgumentException("The compression threshold cannot be negative.");
+    }
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  /**
+   * Locks the settings keys only for writing the settings rather than for the whole of a change,
+   * i.e. reading, changing and writing the settings. The settings are then changed again if
+   * they've been changed in the meantime, which suits the settings that are changed concurrently
+   * only now and then, as the encoding of the settings is done without holding the locks.
+   *
+   * @param optimisticLocking true to lock optimistically, false to lock throughout (by default)
+   */
+  public void setOptimisticLocking(boolean optimisticLocking) {
+    this.optimisticLocking = optimisticLocking;
+  }
+
+  public boolean isOptimisticLocking() {
+    return optimisticLocking;
+  }
+
+  /**
+   * Writes the changed settings behind rather than through: the settings are changed in memory, the
+   * changes of the same settings key are coalesced, and the changed settings are written to the
+   * plugin settings every specified delay, or as soon as the specified number of changes are
+   * pending, whichever comes first. The settings, and the settings keys added to or removed from
+   * the manifest along with them, are read from memory until they're written.
+   *
+   * This suits the settings that are changed very often, e.g. counters, at the risk of losing the
+   * changes of the last delay should the plugin not be stopped properly, {@link #flush()} should be
+   * called as the plugin is stopped. The settings are always locked throughout while written behind,
+   * and the settings changed events are published as the settings are written.
+   *
+   * @param flushDelay the delay between the writes of the changed settings
+   * @param unit of the delay
+   * @param maxPendingChanges the number of the pending changes that the changed settings are written
+   *        as soon as
+   */
+  public synchronized void setWriteBehind(long flushDelay, TimeUnit unit, int maxPendingChanges) {
+    if (flushDelay <= 0 || maxPendingChanges <= 0) {
+      throw new IllegalArgumentException("The flush delay and the maximum pending changes must be positive.");
+    }
+    if (flushScheduler != null) {
+      flushScheduler.shutdown();
+    }
+    this.maxPendingChanges = maxPendingChanges;
+    this.writeBehind = true;
+    flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("settings-write-behind-" + pluginKey + "-%d")
+        .setDaemon(true)
+        .build());
+    flushScheduler.scheduleWithFixedDelay(this::flush, flushDelay, flushDelay, unit);
+  }
+
+  /**
+   * Writes the changed settings through again, after writing the pending changes.
+   */
+  public synchronized void stopWriteBehind() {
+    if (flushScheduler != null) {
+      flushScheduler.shutdown();
+      flushScheduler = null;
+    }
+    writeBehind = false;
+    flush();
+  }
+
+  public boolean isWriteBehind() {
+    return writeBehind;
+  }
+
+  /**
+   * Stops the threads of the settings manager, as it's no longer to be used: the pending changes
+   * are written and the settings are written through again, see {@link #stopWriteBehind()}, and the
+   * asynchronous operations that are already submitted complete while the later ones fail.
+   */
+  public synchronized void shutdown() {
+    stopWriteBehind();
+    getAsyncExecutor().shutdown();
+  }
+
+  /**
+   * Writes the settings that have been changed but not written yet, see
+   * {@link #setWriteBehind(long, TimeUnit, int)}. The settings that cannot be written are kept to
+   * be written the next time.
+   */
+  public void flush() {
+    pendingChanges.set(0);
+    // The settings keys are added to the manifest before their settings are written and removed
+    // after, so that no settings are ever stored under a settings key missing from the manifest.
+    if (!writePendingManifest()) {
+      return;
+    }
+    for (String settingsKey : dirtySettings.keySet()) {
+      Lock lock = settingsLocks.get(settingsKey);
+      lock.lock();
+      try {
+        StoredSettingsList settingsList = dirtySettings.remove(settingsKey);
+        if (settingsList == null) {
+          continue;
+        }
+        // Added to the manifest only after the manifest is written above.
+        if (manifest.isPendingAdded(settingsKey) && !writePendingManifest()) {
+          dirtySettings.put(settingsKey, settingsList);
+          continue;
+        }
+        try {
+          settingsList.flush();
+          stampVersion(settingsKey);
+          metrics.writeCompleted();
+        } catch (RuntimeException e) {
+          dirtySettings.put(settingsKey, settingsList);
+          logger.error("Cannot write the settings of " + settingsKey + ", will try again.", e);
+          continue;
+        }
+      } finally {
+        lock.unlock();
+      }
+      publishSettingsChanged(settingsKey);
+    }
+    try {
+      manifest.writePendingRemoved(dirtySettings.keySet());
+    } catch (RuntimeException e) {
+      logger.error("Cannot write the settings manifest, will try again.", e);
+    }
+  }
+
+  /**
+   * Writes the settings keys added to the manifest while written behind, and returns whether they
+   * are written, as their settings are not to be written otherwise.
+   */
+  private boolean writePendingManifest() {
+    try {
+      manifest.writePendingAdded();
+      return true;
+    } catch (RuntimeException e) {
+      logger.error("Cannot write the settings manifest, will try again.", e);
+      return false;
+    }
+  }
+
+  /**
+   * Registers the migration of the settings of the specified class from the specified schema version
+   * to the next, which is applied to the JSON tree of the settings stored in that schema version as
+   * they're read, so that the settings can still be read after the fields of the class are changed.
+   * The migrations are registered in order starting with the schema version 0, the version of the
+   * settings stored before any migration was registered, and the current schema version of the
+   * class is the number of its migrations, which the settings are stamped with as they're saved.
+   *
+   * The settings are migrated in memory as they're read, and the settings of the same settings key
+   * are then migrated and written back in the background in batches of 500, so that none of the
+   * settings have to be migrated before the plugin is enabled.
+   *
+   * @param classOfT of the settings
+   * @param fromVersion the schema version that the migration migrates the settings from
+   * @param migration of the JSON tree of the settings, which can be modified in place and returned
+   * @param <T> the type of the settings
+   * @throws IllegalArgumentException if the migration from the previous schema version has not been
+   *         registered yet, or the migration from the schema version has already been registered
+   */
+  public <T extends Settings<?>> void registerMigration(Class<T> classOfT, int fromVersion,
+                                                        UnaryOperator<JsonObject> migration) {
+    migrations.register(classOfT, fromVersion, migration);
+    settingsCache.invalidateAll();
+  }
+
+  /**
+   * Stamps the version of the settings of each settings key in the plugin settings as they're
+   * written, and checks the stamps of the cached settings at most once every specified interval as
+   * they're read, so that the settings changed by the settings managers of the other nodes of a
+   * cluster are read again. The settings are otherwise cached for as long as they're not changed on
+   * this node, which suits a single node only.
+   *
+   * Every node of a cluster should check the version stamps, as only the settings managers that check
+   * them write them. Settings changed on two nodes at once are written by whichever writes last, as
+   * the plugin settings cannot be locked across the nodes.
+   *
+   * @param checkInterval the interval between the checks of the version stamp of a settings key, or
+   *        0 to check it on every read
+   * @param unit of the interval
+   */
+  public void setVersionCheckInterval(long checkInterval, TimeUnit unit) {
+    if (checkInterval < 0) {
+      throw new IllegalArgumentException("The version check interval cannot be negative.");
+    }
+    versionCheckNanos = unit.toNanos(checkInterval);
+  }
+
+  public boolean isVersionChecked() {
+    return versionCheckNanos >= 0;
+  }
+
+  /**
+   * Tells the other nodes of a cluster through the specified channel whenever the settings of a
+   * settings key are written, and drops the cached settings of the settings keys the other nodes
+   * tell about, so that the version stamps can be checked far less often, see
+   * {@link #setVersionCheckInterval(long, TimeUnit)}.
+   *
+   * @param clusterChannel to tell the other nodes through, or null to not tell them
+   */
+  public void setClusterChannel(@Nullable SettingsClusterChannel clusterChannel) {
+    if (clusterChannel != null) {
+      clusterChannel.setReceiver(settingsKey -> {
+        settingsChangedElsewhere(settingsKey);
+        manifest.invalidate();
+      });
+    }
+    this.clusterChannel = clusterChannel;
+  }
+
+  public SettingsMetrics getMetrics() {
+    return metrics;
+  }
+
+  public SettingsCodec getSettingsCodec() {
+    return settingsCodec;
+  }
+
+  /**
+   * Reads and writes the JSON of the settings of the specified class with the specified type
+   * adapter rather than the one Gson resolves reflectively, e.g. a hand-written one for the
+   * settings that are read the most.
+   *
+   * @param classOfT of the settings
+   * @param typeAdapter to read and write the JSON of the settings with
+   * @param <T> the type of the settings
+   */
+  public <T extends Settings<?>> void registerTypeAdapter(Class<T> classOfT, TypeAdapter<T> typeAdapter) {
+    for (SettingsCodec codec : settingsCodecs) {
+      if (codec instanceof GsonSettingsCodec) {
+        ((GsonSettingsCodec) codec).registerTypeAdapter(classOfT, typeAdapter);
+      }
+    }
+    settingsCache.invalidateAll();
+  }
+
+  // Internal methods
+
+  private String getSettingsStorageKey(String settingsKey) {
+    return pluginKey + ":" + settingsKey;
+  }
+
+  private SequencedSettingsAdapter getSequencedSettingsAdapter(String settingsKey) {
+    return new SequencedSettingsAdapter(settingsKey);
+  }
+
+  private StoredSettingsList openSettingsList(String settingsKey) {
+    return openSettingsList(settingsKey, false);
+  }
+
+  /**
+   * Opens the settings of the specified settings key as a list, as a map if they're keyed settings,
+   * in pages if they're stored in pages or to be stored in pages, otherwise as a single list.
+   *
+   * @param keyed true to open the settings as a map if there are no settings yet
+   */
+  private StoredSettingsList openSettingsList(String settingsKey, boolean keyed) {
+    String storageKey = getSettingsStorageKey(settingsKey);
+    Object storedSettings = pluginSettings.get(storageKey);
+    if (PagedSettingsList.isHeader(storedSettings)) {
+      return new PagedSettingsList(pluginSettings, storageKey, (String) storedSettings);
+    }
+    if (storedSettings instanceof Map || (keyed && storedSettings == null)) {
+      Map<String, String> settingsMap = storedSettings != null ? (Map<String, String>) storedSettings : ImmutableMap.of();
+      return new KeyedSettingsList(pluginSettings, storageKey, settingsMap);
+    }
+
+    List<String> settingsList = storedSettings != null ? (List<String>) storedSettings : ImmutableList.of();
+    if (pageSize > 0) {
+      return new PagedSettingsList(pluginSettings, storageKey, pageSize, settingsList);
+    }
+    return new SingleSettingsList(pluginSettings, storageKey, settingsList);
+  }
+
+  /**
+   * Opens the settings of the specified settings key for reading, a copy of the settings in memory
+   * if they're changed but not written yet. The settings key should be locked.
+   */
+  private StoredSettingsList openSettingsListForReading(String settingsKey) {
+    StoredSettingsList settingsList = dirtySettings.get(settingsKey);
+    return settingsList != null ? settingsList.snapshot() : openSettingsList(settingsKey);
+  }
+
+  /**
+   * Opens the settings of the specified settings key for reading them once without caching them,
+   * while the settings key is locked, so that the header of paged settings is never read in the
+   * middle of a write, see {@link UncachedSettings}.
+   */
+  UncachedSettings openUncachedSettings(String settingsKey) {
+    Lock lock = settingsLocks.get(settingsKey);
+    lock.lock();
+    try {
+      return new UncachedSettings(settingsKey, openSettingsListForReading(settingsKey),
+          getSettingsVersion(settingsKey).get());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the cached settings of the specified settings key, the settings are loaded while the
+   * settings key is locked, so that they're never loaded from the middle of a change or cached
+   * after being changed. Settings stored in pages are read in full as they're loaded, as their pages
+   * could otherwise be read once changed by another node, no longer matching the header.
+   */
+  private SettingsCache.Entry getCachedSettings(String settingsKey) {
+    SettingsCache.Entry cachedSettings = getCachedSettingsIfPresent(settingsKey);
+    if (cachedSettings != null) {
+      return cachedSettings;
+    }
+    Lock lock = settingsLocks.get(settingsKey);
+    lock.lock();
+    try {
+      return settingsCache.get(settingsKey, () -> {
+        checkVersion(settingsKey); // Before reading the settings, not to miss a change in between.
+        StoredSettingsList settingsList = openSettingsListForReading(settingsKey);
+        return settingsList instanceof PagedSettingsList ? settingsList.snapshot() : settingsList;
+      });
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the cached settings of the specified settings key, or null if they're not cached, or
+   * have been changed by another node since they were read.
+   */
+  @Nullable
+  private SettingsCache.Entry getCachedSettingsIfPresent(String settingsKey) {
+    SettingsCache.Entry cachedSettings = settingsCache.getIfPresent(settingsKey);
+    if (cachedSettings != null && isStale(settingsKey)) {
+      settingsChangedElsewhere(settingsKey);
+      return null;
+    }
+    return cachedSettings;
+  }
+
+  private String getVersionStorageKey(String settingsKey) {
+    return getSettingsStorageKey(settingsKey) + ":version";
+  }
+
+  /**
+   * Writes a new version stamp of the settings of the specified settings key just written, if the
+   * version stamps are checked. The stamp is kept as the settings are removed, so that removing
+   * them is noticed as well.
+   */
+  private void stampVersion(String settingsKey) {
+    if (versionCheckNanos >= 0) {
+      String versionStamp = Long.toHexString(ThreadLocalRandom.current().nextLong());
+      pluginSettings.put(getVersionStorageKey(settingsKey), versionStamp);
+      versionChecks.put(settingsKey, new VersionCheck(versionStamp, System.nanoTime()));
+    }
+  }
+
+  /**
+   * Reads the version stamp of the settings of the specified settings key that are about to be read,
+   * if the version stamps are checked.
+   */
+  private void checkVersion(String settingsKey) {
+    if (versionCheckNanos >= 0) {
+      String versionStamp = (String) pluginSettings.get(getVersionStorageKey(settingsKey));
+      versionChecks.put(settingsKey, new VersionCheck(versionStamp, System.nanoTime()));
+    }
+  }
+
+  /**
+   * Returns true if the settings of the specified settings key have been changed by another node
+   * since the version stamp was last read, reading the version stamp at most once every check
+   * interval, and keeping the one read. The settings of which the version stamp has never been read
+   * are not stale, their version stamp is only kept, and the settings with changes not written yet
+   * are never stale.
+   */
+  private boolean isStale(String settingsKey) {
+    long checkNanos = versionCheckNanos;
+    if (checkNanos < 0 || dirtySettings.containsKey(settingsKey)) {
+      return false;
+    }
+    VersionCheck versionCheck = versionChecks.get(settingsKey);
+    long now = System.nanoTime();
+    if (versionCheck != null && now - versionCheck.checkedAt < checkNanos) {
+      return false;
+    }
+    String versionStamp = (String) pluginSettings.get(getVersionStorageKey(settingsKey));
+    if (versionCheck == null) {
+      versionChecks.putIfAbsent(settingsKey, new VersionCheck(versionStamp, now));
+      return false;
+    }
+    if (!versionChecks.replace(settingsKey, versionCheck, new VersionCheck(versionStamp, now))) {
+      return false; // Checked meanwhile by another thread, which has noticed the change if any.
+    }
+    if (Objects.equals(versionStamp, versionCheck.versionStamp)) {
+      return false;
+    }
+    metrics.staleSettingsFound();
+    return true;
+  }
+
+  /**
+   * Returns the version of the settings of the specified settings key, which is incremented each
+   * time they're written by this settings manager, or found changed by another one.
+   */
+  private AtomicLong getSettingsVersion(String settingsKey) {
+    return settingsVersions.computeIfAbsent(settingsKey, key -> new AtomicLong());
+  }
+
+  private String getClassStorageKey(String settingsKey) {
+    return getSettingsStorageKey(settingsKey) + ":class";
+  }
+
+  /**
+   * Records the class of the settings of the specified settings key as they're read or saved, in
+   * the plugin settings as well the first time, so that the settings written as JSON are stamped
+   * with the schema version of their class however long ago the class was last read or saved.
+   */
+  private void putSettingsClass(String settingsKey, Class<?> settingsClass) {
+    if (migrations.putSettingsClass(settingsKey, settingsClass)
+        && !settingsClass.getName().equals(pluginSettings.get(getClassStorageKey(settingsKey)))) {
+      pluginSettings.put(getClassStorageKey(settingsKey), settingsClass.getName());
+    }
+  }
+
+  /**
+   * Returns the current schema version of the settings of the specified settings key, of the class
+   * recorded of them, or 0 if their class has never been recorded or has no migrations.
+   */
+  int getSchemaVersion(String settingsKey) {
+    Class<?> settingsClass = migrations.getSettingsClass(settingsKey);
+    if (settingsClass != null) {
+      return migrations.getSchemaVersion(settingsClass);
+    }
+    Object settingsClassName = pluginSettings.get(getClassStorageKey(settingsKey));
+    return settingsClassName instanceof String
+        ? migrations.getSchemaVersionByClassName((String) settingsClassName) : 0;
+  }
+
+  private String encode(Object settings) {
+    int schemaVersion = migrations.getSchemaVersion(settings.getClass());
+    if (schemaVersion > 0) {
+      ((Settings<?>) settings).setSchemaVersion(schemaVersion);
+      putSettingsClass(((Settings<?>) settings).getSettingsKey(), settings.getClass());
+    }
+    return compress(settingsCodec.encode(settings));
+  }
+
+  /**
+   * Returns the specified encoded settings compressed if they reach the compression threshold, or
+   * as they are otherwise, see {@link #setCompressionThreshold(int)}.
+   */
+  String compress(String encodedSettings) {
+    int threshold = compressionThreshold;
+    return threshold > 0 && encodedSettings.length() >= threshold
+        ? compression.compress(encodedSettings) : encodedSettings;
+  }
+
+  /**
+   * Returns the encoded settings of the specified stored settings, decompressed if compressed.
+   */
+  String decompress(String storedSettings) {
+    return SettingsCompression.isCompressed(storedSettings) ? compression.decompress(storedSettings) : storedSettings;
+  }
+
+  private <T> T decode(String storedSettings, Class<T> classOfT) {
+    String encodedSettings = decompress(storedSettings);
+    int schemaVersion = migrations.getSchemaVersion(classOfT);
+    if (schemaVersion == 0) {
+      return decodeWithCodec(encodedSettings, classOfT);
+    }
+
+    try {
+      T settings = decodeWithCodec(encodedSettings, classOfT);
+      if (((Settings<?>) settings).getSchemaVersion() >= schemaVersion) {
+        putSettingsClass(((Settings<?>) settings).getSettingsKey(), classOfT);
+        return settings;
+      }
+    } catch (RuntimeException e) {
+      // Of an older schema version that cannot be decoded into the class as it is now.
+    }
+    T settings = decodeMigrated(encodedSettings, classOfT);
+    putSettingsClass(((Settings<?>) settings).getSettingsKey(), classOfT);
+    metrics.settingsMigrated();
+    migrator.schedule(((Settings<?>) settings).getSettingsKey(), classOfT);
+    return settings;
+  }
+
+  /**
+   * Decodes the specified settings of an older schema version migrated to the current one.
+   */
+  private <T> T decodeMigrated(String encodedSettings, Class<T> classOfT) {
+    JsonObject settings = decodeWithCodec(encodedSettings, JsonElement.class).getAsJsonObject();
+    String migratedSettings = migrations.migrate(classOfT, settings).toString();
+    // The JSON codec is the last one.
+    return settingsCodecs.get(settingsCodecs.size() - 1).decode(migratedSettings, classOfT);
+  }
+
+  /**
+   * Returns the specified stored settings migrated to the current schema version of the specified
+   * class and encoded again, or null if they're already of the current schema version.
+   */
+  @Nullable
+  private String migrate(String storedSettings, Class<?> classOfT) {
+    String encodedSettings = decompress(storedSettings);
+    JsonObject settings = decodeWithCodec(encodedSettings, JsonElement.class).getAsJsonObject();
+    if (SettingsMigrations.getSchemaVersion(settings) >= migrations.getSchemaVersion(classOfT)) {
+      return null;
+    }
+    return encode(decodeMigrated(encodedSettings, classOfT));
+  }
+
+  private <T> T decodeWithCodec(String encodedSettings, Class<T> classOfT) {
+    return getCodec(encodedSettings).decode(encodedSettings, classOfT);
+  }
+
+  /**
+   * Returns the codec that the specified encoded settings are encoded by, told by their marker.
+   */
+  SettingsCodec getCodec(String encodedSettings) {
+    for (SettingsCodec codec : settingsCodecs) {
+      if (encodedSettings.startsWith(codec.getMarker())) {
+        return codec;
+      }
+    }
+    throw new IllegalStateException("No codec for the settings");
+  }
+
+  /**
+   * Drops the cached settings of the specified settings key, or replaces them with the keyed
+   * settings just written, and lets the others know about it.
+   */
+  private void settingsChanged(String settingsKey, StoredSettingsList settingsList) {
+    if (settingsList instanceof KeyedSettingsList && !settingsList.isDeleted()) {
+      settingsCache.refresh(settingsKey, (KeyedSettingsList) settingsList);
+    } else {
+      settingsCache.invalidate(settingsKey);
+    }
+    publishSettingsChanged(settingsKey);
+  }
+
+  private void publishSettingsChanged(String settingsKey) {
+    if (eventPublisher != null) {
+      eventPublisher.publish(new SettingsChangedEvent(this, pluginKey, settingsKey));
+    }
+    SettingsClusterChannel clusterChannel = this.clusterChannel;
+    if (clusterChannel != null) {
+      clusterChannel.send(settingsKey);
+    }
+  }
+
+  /**
+   * Drops the cached settings of the specified settings key, which has been changed by another
+   * settings manager.
+   */
+  private void settingsChangedElsewhere(String settingsKey) {
+    Lock lock = settingsLocks.get(settingsKey);
+    lock.lock();
+    try {
+      getSettingsVersion(settingsKey).incrementAndGet();
+      settingsCache.invalidate(settingsKey);
+    } finally {
+      lock.unlock();
+    }
+    changeFeed.publish(settingsKey, null);
+  }
+
+  // Events
+
+  /**
+   * Drops the cached settings of the settings key that has been changed by another settings manager
+   * of the same plugin, and the loaded manifest, which the change may have added the key to or
+   * removed it from.
+   *
+   * @param event of the settings change
+   */
+  @EventListener
+  public void onSettingsChanged(SettingsChangedEvent event) {
+    if (event.getSource() != this && pluginKey.equals(event.getPluginKey())) {
+      settingsChangedElsewhere(event.getSettingsKey());
+      manifest.invalidate();
+    }
+  }
+
+  // Settings
+
+  /**
+   * Query the Settings Manager about if the specified settings (key) exists.
+   *
+   * @param settingsKey to query the existence of settings
+   * @return true if there are settings of the specified settings key
+   */
+  public boolean hasSettings(String settingsKey) {
+    return manifest.has(settingsKey);
+  }
+
+  /**
+   * Query the Settings Manager about if the settings of the specified settings key and ID exists,
+   * without deserializing any of the settings.
+   *
+   * @param settingsKey of the settings
+   * @param settingsId of the settings
+   * @return true if the settings of the specified settings key and ID exists
+   */
+  public boolean hasSettings(String settingsKey, int settingsId) {
+    return settingsId >= 0 && settingsId < getSettingsCount(settingsKey);
+  }
+
+  /**
+   * Query the Settings Manager about if the keyed settings of the specified settings key and ID
+   * exists, without deserializing any of the settings.
+   *
+   * @param settingsKey of the settings
+   * @param settingsId of the settings
+   * @return true if the settings of the specified settings key and ID exists
+   */
+  public boolean hasSettings(String settingsKey, String settingsId) {
+    SettingsCache.Entry cachedSettings = getCachedSettings(settingsKey);
+    return cachedSettings instanceof SettingsCache.KeyedEntry
+        && ((SettingsCache.KeyedEntry) cachedSettings).contains(settingsId);
+  }
+
+  /**
+   * Returns the number of the settings of the specified settings key, without deserializing any of
+   * the settings.
+   *
+   * @param settingsKey of the settings
+   * @return the number of the settings of the specified settings key
+   */
+  public int getSettingsCount(String settingsKey) {
+    return getCachedSettings(settingsKey).size();
+  }
+
+  /**
+   * Add or update the specified settings.
+   *
+   * The settings list is read and written only once, no matter how many settings there are.
+   *
+   * @param settings to be added or updated
+   * @return number the settings of the specified kind that currently exist
+   */
+  public int saveSettings(Settings.Sequenced settings) {
+    Batch batch = batch().save(settings);
+    batch.commit();
+    return batch.size(settings.getSettingsKey());
+  }
+
+  /**
+   * Add or update the specified keyed settings, a settings ID is assigned to the settings that
+   * don't have one yet.
+   *
+   * @param settings to be added or updated
+   * @return number the settings of the specified kind that currently exist
+   */
+  public int saveSettings(Settings.Keyed settings) {
+    Batch batch = batch().save(settings);
+    batch.commit();
+    return batch.size(settings.getSettingsKey());
+  }
+
+  /**
+   * Add or update all the specified settings in one batch, see {@link #batch()}.
+   *
+   * @param settings to be added or updated
+   */
+  public void saveAllSettings(Collection<? extends Settings.Sequenced> settings) {
+    batch().saveAll(settings).commit();
+  }
+
+  /**
+   * Remove the specified the settings.
+   *
+   * @param settings to be removed.
+   * @return number the settings of the specified kind that currently exist
+   */
+  public int removeSettings(Settings.Sequenced settings) {
+    Batch batch = batch().remove(settings);
+    batch.commit();
+    return batch.size(settings.getSettingsKey());
+  }
+
+  /**
+   * Remove the specified keyed settings, the IDs of the other settings are not changed.
+   *
+   * @param settings to be removed.
+   * @return number the settings of the specified kind that currently exist
+   */
+  public int removeSettings(Settings.Keyed settings) {
+    Batch batch = batch().remove(settings);
+    batch.commit();
+    return batch.size(settings.getSettingsKey());
+  }
+
+  /**
+   * Remove all settings of the specified settings key.
+   *
+   * @param settingsKey to remove all settings of
+   */
+  public void removeAllSettings(String settingsKey) {
+    batch().removeAll(settingsKey).commit();
+  }
+
+  /**
+   * Starts a batch of settings changes, which are applied to the settings in memory and written to
+   * the plugin settings when the batch is committed, so that each of the settings keys involved and
+   * the manifest is read and written only once however many settings are changed.
+   *
+   * @return a new batch of settings changes
+   */
+  public Batch batch() {
+    return new Batch();
+  }
+
+  /**
+   * Retrieve the settings of the specified settings key and its class type, if there are multiple
+   * settings found with the specified settings key, the first one is returned.
+   *
+   * The settings are read through the settings cache, the returned object is deserialized for the
+   * caller alone, modifying it is not seen by the other readers until it's saved.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param classOfT to return the settings object generically
+   * @param <T> the type of the settings
+   * @return the settings object
+   */
+  @Nullable
+  public <T> T getSettings(String settingsKey, Class<T> classOfT) {
+    return getSettings(settingsKey, classOfT, 0);
+  }
+
+  /**
+   * Retrieve the settings of the specified settings key and its class type, of the specified index.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param classOfT to return the settings object generically
+   * @param index of the settings
+   * @param <T> the type of the settings
+   * @return the settings object
+   */
+  @Nullable
+  public <T> T getSettings(String settingsKey, Class<T> classOfT, int index) {
+    return getCachedSettings(settingsKey).get(index, encodedSettings -> decode(encodedSettings, classOfT));
+  }
+
+  /**
+   * Retrieve the keyed settings of the specified settings key and its class type, of the specified
+   * settings ID. The keyed settings stay cached as the other settings of the same settings key are
+   * changed or removed.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param classOfT to return the settings object generically
+   * @param settingsId of the settings
+   * @param <T> the type of the settings
+   * @return the settings object, or null if there are no settings of the settings ID
+   */
+  @Nullable
+  public <T> T getSettings(String settingsKey, Class<T> classOfT, String settingsId) {
+    SettingsCache.Entry cachedSettings = getCachedSettings(settingsKey);
+    if (!(cachedSettings instanceof SettingsCache.KeyedEntry)) {
+      return null;
+    }
+    return ((SettingsCache.KeyedEntry) cachedSettings)
+        .get(settingsId, encodedSettings -> decode(encodedSettings, classOfT));
+  }
+
+  /**
+   * Retrieve all settings of the specified settings key as a list.
+   *
+   * The settings are read through the settings cache, the returned list is unmodifiable and its
+   * objects are deserialized for the caller alone, as {@link #getSettings(String, Class)} is.
+   *
+   * @param settingsKey to retrive the settings
+   * @param classOfT to return the settings objects generically
+   * @param <T> the type of the settings
+   * @return the settings object list
+   */
+  public <T> List<T> getAllSettings(String settingsKey, Class<T> classOfT) {
+    return getCachedSettings(settingsKey).getAll(encodedSettings -> decode(encodedSettings, classOfT));
+  }
+
+  /**
+   * Retrieve the settings of the specified settings key of which the specified field has the
+   * specified value. The field is to be marked {@link Indexed} in the settings type, the settings
+   * are indexed by it in memory, along with the cached settings, on the first lookup, and the later
+   * lookups take constant time. As keyed settings are changed, their indexes are updated from the
+   * changed settings alone, while the indexes of sequenced settings, of which the indexes shift, are
+   * built again on the next lookup.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param fieldName of the indexed field
+   * @param value of the field to look up, the settings of which the field is null are not indexed
+   * @param classOfT to return the settings objects generically
+   * @param <T> the type of the settings
+   * @return the unmodifiable settings object list, in the order of the settings if they're sequenced
+   * @throws IllegalArgumentException if the field is not indexed
+   */
+  public <T> List<T> findBy(String settingsKey, String fieldName, Object value, Class<T> classOfT) {
+    Field field = SettingsIndexes.getIndexedField(classOfT, fieldName);
+    return getCachedSettings(settingsKey)
+        .findBy(field, value, classOfT, encodedSettings -> decode(encodedSettings, classOfT));
+  }
+
+  /**
+   * Stream all settings of the specified settings key, the settings are deserialized one by one
+   * as the stream is consumed.
+   *
+   * Unless they are already cached, the settings are read straight from the plugin settings and
+   * are not cached, so that streaming through a large number of settings does not hold them all in
+   * memory. Settings stored in pages are read page by page, each while the settings key is locked.
+   *
+   * @param settingsKey to stream the settings
+   * @param classOfT to return the settings objects generically
+   * @param <T> the type of the settings
+   * @return the settings object stream, which throws {@link ConcurrentModificationException} as it's
+   *         consumed if the settings stored in pages are changed before all their pages are read
+   */
+  public <T> Stream<T> streamSettings(String settingsKey, Class<T> classOfT) {
+    SettingsCache.Entry cachedSettings = getCachedSettingsIfPresent(settingsKey);
+    if (cachedSettings == null && dirtySettings.containsKey(settingsKey)) {
+      cachedSettings = getCachedSettings(settingsKey);
+    }
+    if (cachedSettings != null) {
+      return cachedSettings.stream(encodedSettings -> decode(encodedSettings, classOfT));
+    }
+    return openUncachedSettings(settingsKey).stream(0)
+        .map(encodedSettings -> decode(encodedSettings, classOfT));
+  }
+
+  /**
+   * Retrieve a page of the settings of the specified settings key, only the settings on the page
+   * are deserialized (and only their pages are read if they are stored in pages).
+   *
+   * Like {@link #streamSettings(String, Class)}, the settings are not cached if they're not
+   * already cached.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param classOfT to return the settings objects generically
+   * @param offset the index of the first settings on the page
+   * @param limit the maximum number of the settings on the page
+   * @param <T> the type of the settings
+   * @return the settings object list, which is empty if the offset is beyond the last settings
+   */
+  public <T> List<T> getSettingsPage(String settingsKey, Class<T> classOfT, int offset, int limit) {
+    return getSettingsPage(settingsKey, classOfT, encodedSettings -> decode(encodedSettings, classOfT), offset, limit);
+  }
+
+  private <T> List<T> getSettingsPage(String settingsKey, Class<T> classOfT, Function<String, T> decoder,
+                                      int offset, int limit) {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("The offset and the limit cannot be negative.");
+    }
+    SettingsCache.Entry cachedSettings = getCachedSettingsIfPresent(settingsKey);
+    if (cachedSettings == null && dirtySettings.containsKey(settingsKey)) {
+      cachedSettings = getCachedSettings(settingsKey);
+    }
+    if (cachedSettings != null) {
+      return cachedSettings.getPage(decoder, offset, limit);
+    }
+    // The pages of the page are read at once, so that none of them is read after a change.
+    List<String> settingsList;
+    Lock lock = settingsLocks.get(settingsKey);
+    lock.lock();
+    try {
+      UncachedSettings uncachedSettings = openUncachedSettings(settingsKey);
+      settingsList = uncachedSettings.stream(Math.min(offset, uncachedSettings.size()))
+          .limit(limit)
+          .collect(Collectors.toList());
+    } finally {
+      lock.unlock();
+    }
+    return Collections.unmodifiableList(settingsList.stream()
+        .map(decoder)
+        .collect(Collectors.toList()));
+  }
+
+  // JSON
+
+  /**
+   * Retrieve a page of the settings of the specified settings key as JSON, see
+   * {@link #getSettingsPage(String, Class, int, int)}. The settings stored as JSON are returned as
+   * they're stored, without being deserialized, the others are decoded into JSON.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param offset the index of the first settings on the page
+   * @param limit the maximum number of the settings on the page
+   * @return the JSON list of the settings, which is empty if the offset is beyond the last settings
+   */
+  public List<String> getSettingsJsonPage(String settingsKey, int offset, int limit) {
+    return getSettingsPage(settingsKey, String.class, json::toJson, offset, limit);
+  }
+
+  /**
+   * Retrieve the settings of the specified settings key as JSON, of the specified index, see
+   * {@link #getSettingsJsonPage(String, int, int)}.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param index of the settings
+   * @return the JSON of the settings, or null if there are no settings of the index
+   */
+  @Nullable
+  public String getSettingsJson(String settingsKey, int index) {
+    List<String> settingsJson = getSettingsJsonPage(settingsKey, Math.max(index, 0), index < 0 ? 0 : 1);
+    return settingsJson.isEmpty() ? null : settingsJson.get(0);
+  }
+
+  /**
+   * Retrieve the keyed settings of the specified settings key as JSON, of the specified settings ID,
+   * see {@link #getSettingsJsonPage(String, int, int)}.
+   *
+   * @param settingsKey to retrieve the settings
+   * @param settingsId of the settings
+   * @return the JSON of the settings, or null if there are no keyed settings of the settings ID
+   */
+  @Nullable
+  public String getSettingsJson(String settingsKey, String settingsId) {
+    SettingsCache.Entry cachedSettings = getCachedSettings(settingsKey);
+    if (!(cachedSettings instanceof SettingsCache.KeyedEntry)) {
+      return null;
+    }
+    return ((SettingsCache.KeyedEntry) cachedSettings).get(settingsId, json::toJson);
+  }
+
+  /**
+   * Writes a page of the settings of the specified settings key as a JSON object, along with the
+   * settings key, the offset and the total number of the settings:
+   * <pre>{"settingsKey":"echeveria","offset":0,"total":2,"settings":[{...},{...}]}</pre>
+   *
+   * The settings are written one by one as they're read, see
+   * {@link #openSettingsJsonPage(String, int, int)}.
+   *
+   * @param settingsKey to write the settings of
+   * @param offset the index of the first settings on the page
+   * @param limit the maximum number of the settings on the page
+   * @param writer to write the page to, which is neither flushed nor closed
+   * @return the number of the settings written
+   * @throws IOException if the page cannot be written
+   * @throws ConcurrentModificationException if the settings stored in pages are changed before all
+   *         the pages of the page are read
+   */
+  public int writeSettingsPage(String settingsKey, int offset, int limit, Writer writer) throws IOException {
+    return openSettingsJsonPage(settingsKey, offset, limit).write(writer);
+  }
+
+  /**
+   * Opens a page of the settings of the specified settings key as JSON, to be written along with
+   * the tag of the settings it's a page of, see {@link #getSettingsTag(String)}. The tag is taken
+   * along with the settings while the settings key is locked, so that the page written is always of
+   * the settings as they were when tagged.
+   *
+   * The settings are written one by one as they're read, as they're stored if they're stored as
+   * JSON, see {@link #getSettingsJsonPage(String, int, int)}. Unless they're already cached, they're
+   * read straight from the plugin settings without being cached, a page at a time if they're stored
+   * in pages, so that writing takes about the same memory however large the page is. The pages are
+   * each read while the settings key is locked, and writing fails if the settings are changed
+   * before all of them are read.
+   *
+   * @param settingsKey to open the settings of
+   * @param offset the index of the first settings on the page
+   * @param limit the maximum number of the settings on the page
+   * @return the page of the settings
+   * @throws IllegalArgumentException if the offset or the limit is negative
+   */
+  public SettingsJsonPage openSettingsJsonPage(String settingsKey, int offset, int limit) {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("The offset and the limit cannot be negative.");
+    }
+    Lock lock = settingsLocks.get(settingsKey);
+    lock.lock();
+    try {
+      String tag = getSettingsTag(settingsKey);
+      SettingsCache.Entry cachedSettings = settingsCache.getIfPresent(settingsKey);
+      if (cachedSettings == null && dirtySettings.containsKey(settingsKey)) {
+        cachedSettings = getCachedSettings(settingsKey);
+      }
+      if (cachedSettings != null) {
+        List<String> settingsList = cachedSettings.getSettingsList();
+        int total = settingsList.size();
+        List<String> page = settingsList.subList(Math.min(offset, total), (int) Math.min((long) offset + limit, total));
+        return new SettingsJsonPage(settingsKey, offset, total, tag, page.stream().map(json::toJson));
+      }
+      UncachedSettings uncachedSettings = openUncachedSettings(settingsKey);
+      int total = uncachedSettings.size();
+      return new SettingsJsonPage(settingsKey, offset, total, tag,
+          uncachedSettings.stream(Math.min(offset, total)).limit(limit).map(json::toJson));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Asynchronous API
 
-  private String getSettingsStorageKey(String settingsKey) {
-    return pluginKey + ":" + settingsKey;
+  SettingsExecutor getAsyncExecutor() {
+    SettingsExecutor asyncExecutor = this.asyncExecutor;
+    if (asyncExecutor == null) {
+      synchronized (this) {
+        asyncExecutor = this.asyncExecutor;
+        if (asyncExecutor == null) {
+          this.asyncExecutor = asyncExecutor = new SettingsExecutor("settings-async-" + pluginKey, ASYNC_PARALLELISM);
+        }
+      }
+    }
+    return asyncExecutor;
   }
 
-  private SequencedSettingsAdapter getSequencedSettingsAdapter(String settingsKey) {
-    return new SequencedSettingsAdapter(settingsKey);
+  /**
+   * Asynchronous {@link #saveSettings(Settings.Sequenced)}, which runs on the threads of the
+   * settings manager, a bounded number at a time. The writes of the same settings key are made in
+   * the order they're called, and the reads run after the writes of the same settings key called
+   * before them, so that they see them.
+   *
+   * @param settings to be added or updated
+   * @return a future of the number the settings of the specified kind that currently exist
+   */
+  public CompletableFuture<Integer> saveSettingsAsync(Settings.Sequenced settings) {
+    return getAsyncExecutor().submitWrite(Collections.singleton(settings.getSettingsKey()),
+        () -> saveSettings(settings));
   }
 
-  // Settings
-
   /**
-   * Query the Settings Manager about if the specified settings (key) exists.
+   * Asynchronous {@link #saveSettings(Settings.Keyed)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
    *
-   * @param settingsKey to query the existence of settings
-   * @return true if there are settings of the specified settings key
+   * @param settings to be added or updated
+   * @return a future of the number the settings of the specified kind that currently exist
    */
-  public boolean hasSettings(String settingsKey) {
-    return manifest.has(settingsKey);
+  public CompletableFuture<Integer> saveSettingsAsync(Settings.Keyed settings) {
+    return getAsyncExecutor().submitWrite(Collections.singleton(settings.getSettingsKey()),
+        () -> saveSettings(settings));
   }
 
   /**
-   * Add or update the specified settings.
+   * Asynchronous {@link #saveAllSettings(Collection)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
    *
    * @param settings to be added or updated
-   * @return number the settings of the specified kind that currently exist
+   * @return a future completed once the settings are saved
    */
-  public int saveSettings(Settings.Sequenced settings) {
-    SequencedSettingsAdapter adapter = getSequencedSettingsAdapter(settings.getSettingsKey());
-
-    if (settings.isNewIn(this)) {
-      int settingsId = adapter.size(); // Starting with 0, the second would be 1.
-      settings.setSettingsId(settingsId);
-    }
-
-    String settingsJson = gson.toJson(settings);
-    if (settings.isNewIn(this)) {
-      adapter.add(settingsJson);
-      String settingsKey = settings.getSettingsKey();
-      if (!manifest.getList().contains(settingsKey)) {
-        manifest.add(settingsKey);
-      }
-    } else {
-      adapter.set(settings.getSettingsId(), settingsJson);
-    }
-
-    return adapter.size();
+  public CompletableFuture<Void> saveAllSettingsAsync(Collection<? extends Settings.Sequenced> settings) {
+    Set<String> settingsKeys = settings.stream().map(Settings::getSettingsKey).collect(Collectors.toSet());
+    return getAsyncExecutor().submitWrite(settingsKeys, () -> {
+      saveAllSettings(settings);
+      return null;
+    });
   }
 
   /**
-   * Remove the specified the settings.
+   * Asynchronous {@link #removeSettings(Settings.Sequenced)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
    *
    * @param settings to be removed.
-   * @return number the settings of the specified kind that currently exist
+   * @return a future of the number the settings of the specified kind that currently exist
    */
-  public int removeSettings(Settings.Sequenced settings) {
-    SequencedSettingsAdapter adapter = getSequencedSettingsAdapter(settings.getSettingsKey());
-
-    if (settings.isNewIn(this)) {
-      throw new IllegalArgumentException("Cannot remove settings that does not exist yet.");
-    } else {
-      String settingsJson = gson.toJson(settings);
-      adapter.remove(settings.getSettingsId());
-      if (adapter.size() == 0) {
-        manifest.remove(settings.getSettingsKey());
-      }
-    }
+  public CompletableFuture<Integer> removeSettingsAsync(Settings.Sequenced settings) {
+    return getAsyncExecutor().submitWrite(Collections.singleton(settings.getSettingsKey()),
+        () -> removeSettings(settings));
+  }
 
-    return adapter.size();
+  /**
+   * Asynchronous {@link #removeSettings(Settings.Keyed)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
+   *
+   * @param settings to be removed.
+   * @return a future of the number the settings of the specified kind that currently exist
+   */
+  public CompletableFuture<Integer> removeSettingsAsync(Settings.Keyed settings) {
+    return getAsyncExecutor().submitWrite(Collections.singleton(settings.getSettingsKey()),
+        () -> removeSettings(settings));
   }
 
   /**
-   * Remove all settings of the specified settings key.
+   * Asynchronous {@link #removeAllSettings(String)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
    *
    * @param settingsKey to remove all settings of
+   * @return a future completed once the settings are removed
    */
-  public void removeAllSettings(String settingsKey) {
-    getSequencedSettingsAdapter(settingsKey).removeAll();
-    manifest.remove(settingsKey);
+  public CompletableFuture<Void> removeAllSettingsAsync(String settingsKey) {
+    return getAsyncExecutor().submitWrite(Collections.singleton(settingsKey), () -> {
+      removeAllSettings(settingsKey);
+      return null;
+    });
   }
 
   /**
-   * Retrieve the settings of the specified settings key and its class type, if there are multiple
-   * settings found with the specified settings key, the first one is returned.
+   * Asynchronous {@link #getSettings(String, Class, int)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
    *
    * @param settingsKey to retrieve the settings
    * @param classOfT to return the settings object generically
+   * @param index of the settings
    * @param <T> the type of the settings
-   * @return the settings object
+   * @return a future of the settings object
    */
-  @Nullable
-  public <T> T getSettings(String settingsKey, Class<T> classOfT) {
-    return getSettings(settingsKey, classOfT, 0);
+  public <T> CompletableFuture<T> getSettingsAsync(String settingsKey, Class<T> classOfT, int index) {
+    return getAsyncExecutor().submitRead(settingsKey, () -> getSettings(settingsKey, classOfT, index));
   }
 
   /**
-   * Retrieve the settings of the specified settings key and its class type, of the specified index.
+   * Asynchronous {@link #getSettings(String, Class, String)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
    *
    * @param settingsKey to retrieve the settings
    * @param classOfT to return the settings object generically
-   * @param index of the settings
+   * @param settingsId of the settings
    * @param <T> the type of the settings
-   * @return the settings object
+   * @return a future of the settings object, or of null if there are no settings of the settings ID
    */
-  @Nullable
-  public <T> T getSettings(String settingsKey, Class<T> classOfT, int index) {
-    String settingsJson = getSequencedSettingsAdapter(settingsKey).get(index);
-    return gson.fromJson(settingsJson, classOfT);
+  public <T> CompletableFuture<T> getSettingsAsync(String settingsKey, Class<T> classOfT, String settingsId) {
+    return getAsyncExecutor().submitRead(settingsKey, () -> getSettings(settingsKey, classOfT, settingsId));
   }
 
   /**
-   * Retrieve all settings of the specified settings key as a list.
+   * Asynchronous {@link #getAllSettings(String, Class)},
+   * see {@link #saveSettingsAsync(Settings.Sequenced)}.
+   * The settings of many settings keys are read in parallel this way.
    *
-   * @param settingsKey to retrive the settings
+   * @param settingsKey to retrieve the settings
    * @param classOfT to return the settings objects generically
    * @param <T> the type of the settings
-   * @return the settings object list
+   * @return a future of the settings object list
    */
-  public <T> List<T> getAllSettings(String settingsKey, Class<T> classOfT) {
-    SequencedSettingsAdapter adapter = getSequencedSettingsAdapter(settingsKey);
-    if (adapter.isExist()) {
-      return adapter.toList().stream()
-          .map(settingsJson -> gson.fromJson(settingsJson, classOfT))
-          .collect(Collectors.toList());
-    } else {
-      return ImmutableList.of();
-    }
+  public <T> CompletableFuture<List<T>> getAllSettingsAsync(String settingsKey, Class<T> classOfT) {
+    return getAsyncExecutor().submitRead(settingsKey, () -> getAllSettings(settingsKey, classOfT));
+  }
+
+  // Export and import
+
+  /**
+   * Writes the settings of every settings key in the manifest as newline-delimited JSON, a line for
+   * each settings, which {@link #importSettings(Reader)} reads back. The settings are written as
+   * they're stored, without deserializing them, and are read a settings key (or a page of them) at a
+   * time without going through the cache, so that exporting takes about the same memory however many
+   * settings there are.
+   *
+   * Each line holds the settings key, the settings ID of keyed settings, and the stored settings:
+   * <pre>{"settingsKey":"echeveria","settings":"{\"species\":\"colorata\",...}"}</pre>
+   *
+   * The settings of each settings key are opened while the settings key is locked, and the pages
+   * of paged settings are read while it's locked, so that a settings key is never exported from the
+   * middle of a change.
+   *
+   * @param writer to write the settings to, which is neither flushed nor closed
+   * @return the number of the settings written
+   * @throws IOException if the settings cannot be written
+   * @throws ConcurrentModificationException if paged settings are changed before all their pages
+   *         are exported
+   */
+  public int exportSettings(Writer writer) throws IOException {
+    return export.write(writer);
+  }
+
+  /**
+   * Reads the settings written by {@link #exportSettings(Writer)} and replaces the settings of each
+   * settings key read with them, the settings keys that are not read are kept as they are. Every
+   * line is checked, and spooled to a temporary file, before any settings are replaced, and the
+   * settings are then written in batches of 500, so that importing takes about the same memory
+   * however many settings there are. Should the plugin settings fail to be written midway, the
+   * settings of a settings key are therefore left partly replaced.
+   *
+   * The settings of a settings key are to be on consecutive lines, and the settings of a sequenced
+   * settings key in the order of their IDs, as the export writes them.
+   *
+   * @param reader to read the settings from, which is not closed
+   * @return the number of the settings read
+   * @throws IOException if the settings cannot be read
+   * @throws IllegalArgumentException if a line is not settings as exported, or the settings of a
+   *         settings key are not on consecutive lines
+   */
+  public int importSettings(Reader reader) throws IOException {
+    return export.read(reader);
   }
 
   /**
@@ -214,6 +1451,629 @@ public class SettingsManager {
     return manifest.getList();
   }
 
+  /**
+   * Returns a tag of the manifest as it is now, which changes whenever the manifest is changed, so
+   * that a client can tell if the manifest it has is still current without the manifest being read,
+   * e.g. as an entity tag. The manifest is only read if it has to be checked for the changes of the
+   * other nodes of a cluster, see {@link #setVersionCheckInterval(long, TimeUnit)}.
+   *
+   * @return the tag of the manifest, unique to this settings manager
+   */
+  public String getManifestTag() {
+    return manifest.getTag();
+  }
+
+  /**
+   * Returns a tag of the settings of the specified settings key as they are now, which changes
+   * whenever the settings are changed, see {@link #getManifestTag()}.
+   *
+   * @param settingsKey of the settings
+   * @return the tag of the settings, unique to this settings manager
+   */
+  public String getSettingsTag(String settingsKey) {
+    if (isStale(settingsKey)) {
+      settingsChangedElsewhere(settingsKey);
+    }
+    return getTag(settingsKey);
+  }
+
+  /**
+   * Returns the tag of the version of the settings of the specified settings key, prefixed with a
+   * random tag of this settings manager, so that the tags of another node of a cluster, or of this
+   * node before it was restarted, never match the tags of the settings changed since.
+   */
+  private String getTag(String settingsKey) {
+    return instanceTag + "-" + Long.toHexString(getSettingsVersion(settingsKey).get());
+  }
+
+  // Change feed
+
+  /**
+   * Returns the ID of the change feed of this settings manager, which tells the versions of its
+   * changes apart from the versions of the changes of the other settings managers, e.g. of another
+   * node of a cluster, or of this node before it was restarted.
+   *
+   * @return the ID of the change feed
+   */
+  public String getChangeFeedId() {
+    return instanceTag;
+  }
+
+  /**
+   * Returns the version of the latest change of the settings, or 0 if none of the settings have been
+   * changed yet, to follow the changes from, see {@link #awaitChanges(long, long, TimeUnit)}.
+   *
+   * @return the version of the latest change of the settings
+   */
+  public long getLastChangeVersion() {
+    return changeFeed.getLastVersion();
+  }
+
+  /**
+   * Returns the changes of the settings after the specified version, waiting for the next change up
+   * to the specified timeout if there are none yet. The changes are published once they can be read,
+   * including the changes of the other settings managers as they're noticed, and only the latest 1024
+   * changes are kept.
+   *
+   * @param version of the last change seen
+   * @param timeout to wait for the next change
+   * @param unit of the timeout
+   * @return the changes after the version, which are empty if there are none before the timeout, or
+   *         null if the changes after the version are no longer kept, in which case any of the
+   *         settings may have changed
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Nullable
+  public List<SettingsChange> awaitChanges(long version, long timeout, TimeUnit unit) throws InterruptedException {
+    return changeFeed.awaitChanges(version, timeout, unit);
+  }
+
+  /**
+   * Reads the settings of every settings key in the manifest into the cache in the background, as
+   * many as are cached, so that the first requests after the plugin is enabled do not pay for
+   * reading them. The settings are read on a few threads of their own, which are let go once done.
+   *
+   * The settings are read as they're stored, they're still deserialized as they're queried, as the
+   * classes of the settings are not known until then.
+   *
+   * @return a future completed once the settings are read, see also {@link #isWarmedUp()}
+   */
+  public CompletableFuture<Void> warmUp() {
+    long start = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(WARM_UP_THREADS, new ThreadFactoryBuilder()
+        .setNameFormat("settings-warm-up-" + pluginKey + "-%d")
+        .setDaemon(true)
+        .build());
+    return CompletableFuture.supplyAsync(manifest::getList, executor)
+        .thenCompose(settingsKeys -> CompletableFuture.allOf(settingsKeys.stream()
+            .limit(SETTINGS_CACHE_SIZE)
+            .map(settingsKey -> CompletableFuture.runAsync(() -> warmUp(settingsKey), executor))
+            .toArray(CompletableFuture[]::new)))
+        .whenComplete((result, e) -> {
+          executor.shutdown();
+          if (e != null) {
+            logger.error("Cannot read the settings manifest to warm up the settings.", e);
+          }
+          metrics.warmUpCompleted(System.nanoTime() - start);
+          warmedUp = true;
+        });
+  }
+
+  private void warmUp(String settingsKey) {
+    try {
+      getCachedSettings(settingsKey);
+    } catch (RuntimeException e) {
+      logger.warn("Cannot warm up the settings of " + settingsKey + ", they'll be read as queried.", e);
+    }
+  }
+
+  /**
+   * Returns true once the settings have been read into the cache,
+   * see {@link #warmUp()}, whether all
+   * of them could be read or not.
+   * @return true once the settings have been read into the cache
+   */
+  public boolean isWarmedUp() {
+    return warmedUp;
+  }
+
+  /**
+   * A batch of settings changes, see {@link SettingsManager#batch()}.
+   *
+   * As the settings ID is the index of the settings in the list of the settings of the same kind,
+   * removing settings changes the ID of the later settings of the same kind in the same batch.
+   *
+   * The changes are recorded as they're made and applied to the settings when the batch is
+   * committed, while the settings keys involved are locked, so that the settings IDs are assigned
+   * from the settings as they're written rather than as they were read. Either all the changes of a
+   * batch are applied or none of them are: the changes are applied to a copy of the settings, which
+   * replaces them once all the changes have been applied.
+   */
+  public class Batch {
+
+    private final Map<String, List<Consumer<StoredSettingsList>>> changesMap = Maps.newLinkedHashMap();
+    private final Set<String> keyedSettingsKeys = Sets.newHashSet();
+    private final Map<String, PendingSettings> pendingSettingsMap = Maps.newLinkedHashMap();
+    private boolean committed;
+
+    private Batch() {
+    }
+
+    private Batch change(String settingsKey, Consumer<StoredSettingsList> change) {
+      checkNotCommitted();
+      changesMap.computeIfAbsent(settingsKey, key -> Lists.newArrayList()).add(change);
+      return this;
+    }
+
+    private void checkNotCommitted() {
+      if (committed) {
+        throw new IllegalStateException("The batch has already been committed.");
+      }
+    }
+
+    private int size(String settingsKey) {
+      PendingSettings pendingSettings = pendingSettingsMap.get(settingsKey);
+      return pendingSettings != null ? pendingSettings.settingsList.size() : 0;
+    }
+
+    /**
+     * Add or update the specified settings.
+     *
+     * @param settings to be added or updated
+     * @return this batch
+     */
+    public Batch save(Settings.Sequenced settings) {
+      // The settings ID (the index in the list) may have been assigned without the settings being
+      // saved, it's new unless the index is within the list. It's taken now as the settings ID is
+      // assigned again should the changes be applied again.
+      int settingsId = settings.getSettingsId();
+      return change(settings.getSettingsKey(), settingsList -> {
+        settingsList.checkSequenced();
+        boolean isNew = settingsId < 0 || settingsId >= settingsList.size();
+        if (isNew) {
+          settings.setSettingsId(settingsList.size()); // Starting with 0, the second would be 1.
+        }
+
+        String encodedSettings = encode(settings);
+        if (isNew) {
+          settingsList.add(encodedSettings);
+        } else if (encodedSettings.equals(settingsList.get(settingsId))) {
+          metrics.writeSkipped(); // Unchanged, the list isn't modified so that it's not written.
+        } else {
+          settingsList.set(settingsId, encodedSettings);
+        }
+      });
+    }
+
+    /**
+     * Add or update the specified keyed settings.
+     *
+     * @param settings to be added or updated
+     * @return this batch
+     */
+    public Batch save(Settings.Keyed settings) {
+      String settingsId = settings.getSettingsId();
+      keyedSettingsKeys.add(settings.getSettingsKey());
+      return change(settings.getSettingsKey(), settingsList -> {
+        String newSettingsId = settingsId != null ? settingsId : UUID.randomUUID().toString();
+        settings.setSettingsId(newSettingsId);
+        KeyedSettingsList keyedSettingsList = settingsList.asKeyed();
+        String encodedSettings = encode(settings);
+        if (encodedSettings.equals(keyedSettingsList.getById(newSettingsId))) {
+          metrics.writeSkipped();
+        } else {
+          keyedSettingsList.putById(newSettingsId, encodedSettings);
+        }
+      });
+    }
+
+    /**
+     * Add or update all the specified settings.
+     *
+     * @param settings to be added or updated
+     * @return this batch
+     */
+    public Batch saveAll(Collection<? extends Settings.Sequenced> settings) {
+      settings.forEach(this::save);
+      return this;
+    }
+
+    /**
+     * Remove the specified settings.
+     *
+     * @param settings to be removed
+     * @return this batch
+     */
+    public Batch remove(Settings.Sequenced settings) {
+      int settingsId = settings.getSettingsId();
+      return change(settings.getSettingsKey(), settingsList -> {
+        settingsList.checkSequenced();
+        if (settingsId < 0 || settingsId >= settingsList.size()) {
+          throw new IllegalArgumentException("Cannot remove settings that does not exist yet.");
+        }
+        settingsList.remove(settingsId);
+      });
+    }
+
+    /**
+     * Remove the specified keyed settings.
+     *
+     * @param settings to be removed
+     * @return this batch
+     */
+    public Batch remove(Settings.Keyed settings) {
+      String settingsId = settings.getSettingsId();
+      keyedSettingsKeys.add(settings.getSettingsKey());
+      return change(settings.getSettingsKey(), settingsList -> {
+        KeyedSettingsList keyedSettingsList = settingsList.asKeyed();
+        if (settingsId == null || !keyedSettingsList.containsId(settingsId)) {
+          throw new IllegalArgumentException("Cannot remove settings that does not exist yet.");
+        }
+        keyedSettingsList.removeById(settingsId);
+      });
+    }
+
+    /**
+     * Remove all settings of the specified settings key.
+     *
+     * @param settingsKey to remove all settings of
+     * @return this batch
+     */
+    public Batch removeAll(String settingsKey) {
+      return change(settingsKey, StoredSettingsList::delete);
+    }
+
+    /**
+     * Add the specified settings as JSON, which are stored as JSON whatever the codec is, see
+     * {@link SettingsManager#getSettingsJsonPage(String, int, int)}. The settings are keyed if their
+     * settings ID is a string, or if the settings of the settings key are keyed, in which case a
+     * settings ID is assigned to the settings without one, and are added to the end of the sequenced
+     * settings otherwise. The settings key and the settings ID are set in the JSON as it's added, and
+     * the current schema version of the settings class once settings of the settings key have ever
+     * been read or saved through it, on any node, see {@link SettingsManager#registerMigration}.
+     *
+     * @param settingsKey of the settings
+     * @param settings to be added
+     * @return this batch
+     * @throws IllegalArgumentException as the batch is committed, if the keyed settings of the
+     *         settings ID already exist
+     */
+    public Batch addJson(String settingsKey, JsonObject settings) {
+      JsonElement settingsId = settings.get("settingsId");
+      boolean keyed = SettingsJson.isKeyedId(settingsId);
+      if (keyed) {
+        keyedSettingsKeys.add(settingsKey);
+      }
+      return change(settingsKey, settingsList -> json.add(settingsKey, settingsList, settings, keyed));
+    }
+
+    /**
+     * Update the existing settings of the settings ID in the specified settings as JSON, see
+     * {@link #addJson(String, JsonObject)}, the settings ID being a string for keyed settings and the
+     * index for sequenced settings.
+     *
+     * @param settingsKey of the settings
+     * @param settings to be updated
+     * @return this batch
+     * @throws IllegalArgumentException if the settings have no settings ID, or as the batch is
+     *         committed, if the settings of the settings ID don't exist
+     */
+    public Batch updateJson(String settingsKey, JsonObject settings) {
+      JsonElement settingsId = settings.get("settingsId");
+      if (settingsId == null || !settingsId.isJsonPrimitive() || settingsId.getAsJsonPrimitive().isBoolean()) {
+        throw new IllegalArgumentException("Cannot update settings without a settings ID.");
+      }
+      boolean keyed = SettingsJson.isKeyedId(settingsId);
+      if (keyed) {
+        keyedSettingsKeys.add(settingsKey);
+      }
+      return change(settingsKey, settingsList -> json.update(settingsKey, settingsList, settings, keyed));
+    }
+
+    /**
+     * Migrates the specified range of the settings to the current schema version of the specified
+     * class, the settings of which the IDs are in the range as of the commit for keyed settings.
+     */
+    Batch migrate(String settingsKey, Class<?> classOfT, int fromIndex, int count) {
+      return change(settingsKey, settingsList -> {
+        if (settingsList instanceof KeyedSettingsList) {
+          KeyedSettingsList keyedSettingsList = (KeyedSettingsList) settingsList;
+          List<String> settingsIds = keyedSettingsList.getSettingsMap().keySet().stream()
+              .skip(fromIndex)
+              .limit(count)
+              .collect(Collectors.toList());
+          for (String settingsId : settingsIds) {
+            String migratedSettings = SettingsManager.this.migrate(keyedSettingsList.getById(settingsId), classOfT);
+            if (migratedSettings != null) {
+              keyedSettingsList.putById(settingsId, migratedSettings);
+            }
+          }
+        } else {
+          for (int index = fromIndex; index < Math.min(fromIndex + count, settingsList.size()); index++) {
+            String migratedSettings = SettingsManager.this.migrate(settingsList.get(index), classOfT);
+            if (migratedSettings != null) {
+              settingsList.set(index, migratedSettings);
+            }
+          }
+        }
+      });
+    }
+
+    /**
+     * Adds the specified settings as they're stored to the end of the sequenced settings.
+     */
+    Batch addEncoded(String settingsKey, String encodedSettings) {
+      return change(settingsKey, settingsList -> {
+        settingsList.checkSequenced();
+        settingsList.add(encodedSettings);
+      });
+    }
+
+    /**
+     * Adds or updates the specified settings as they're stored in the keyed settings.
+     */
+    Batch putEncoded(String settingsKey, String settingsId, String encodedSettings) {
+      keyedSettingsKeys.add(settingsKey);
+      return change(settingsKey, settingsList -> settingsList.asKeyed().putById(settingsId, encodedSettings));
+    }
+
+    /**
+     * Asynchronous {@link #commit()},
+     * see {@link SettingsManager#saveSettingsAsync(Settings.Sequenced)},
+     * the batch is not to be changed afterwards.
+     *
+     * @return a future completed once the batch is committed
+     */
+    public CompletableFuture<Void> commitAsync() {
+      checkNotCommitted();
+      return getAsyncExecutor().submitWrite(ImmutableSet.copyOf(changesMap.keySet()), () -> {
+        commit();
+        return null;
+      });
+    }
+
+    /**
+     * Applies the changes to the settings of each settings key, and then writes the changed settings
+     * of each settings key and the manifest if it's changed.
+     *
+     * The settings keys are locked throughout, unless the settings manager locks optimistically, in
+     * which case they're locked only for writing, and the changes are applied again if the settings
+     * have been changed in the meantime.
+     *
+     * @throws ConcurrentModificationException if the settings kept being changed while locking
+     *         optimistically
+     */
+    public void commit() {
+      checkNotCommitted();
+      committed = true;
+
+      Iterable<Lock> locks = settingsLocks.bulkGet(changesMap.keySet());
+      // The changes are applied to the settings in memory while written behind, they must be locked.
+      if (!optimisticLocking || writeBehind || !dirtySettings.isEmpty()) {
+        lockAll(locks);
+        try {
+          apply();
+          write();
+        } finally {
+          unlockAll(locks);
+        }
+        if (writeBehind && pendingChanges.addAndGet(changesMap.size()) >= maxPendingChanges) {
+          flush();
+        }
+        return;
+      }
+
+      for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+        apply();
+        lockAll(locks);
+        try {
+          if (isUnchanged()) {
+            write();
+            return;
+          }
+        } finally {
+          unlockAll(locks);
+        }
+      }
+      throw new ConcurrentModificationException("The settings kept being changed while being saved.");
+    }
+
+    /**
+     * Opens the settings of each settings key and applies the changes to them in memory, to a copy
+     * of the settings changed but not written yet, which is put in their place as it's written.
+     */
+    private void apply() {
+      pendingSettingsMap.clear();
+      changesMap.forEach((settingsKey, changes) -> {
+        long version = getSettingsVersion(settingsKey).get(); // Before reading the settings
+        StoredSettingsList dirtySettingsList = dirtySettings.get(settingsKey);
+        StoredSettingsList settingsList = dirtySettingsList != null
+            ? dirtySettingsList.copy() : openSettingsList(settingsKey, keyedSettingsKeys.contains(settingsKey));
+        PendingSettings pendingSettings = new PendingSettings(settingsList, settingsList.isEmpty(), version);
+        pendingSettingsMap.put(settingsKey, pendingSettings);
+        changes.forEach(change -> change.accept(settingsList));
+        pendingSettings.changed = settingsList.getModificationCount() != pendingSettings.modificationCount;
+      });
+    }
+
+    private boolean isUnchanged() {
+      return pendingSettingsMap.entrySet().stream()
+          .allMatch(entry -> getSettingsVersion(entry.getKey()).get() == entry.getValue().version);
+    }
+
+    private void write() {
+      // The settings of which all the changes turn out to be no-op are neither written nor reloaded,
+      // they're still kept pending for the number of the settings.
+      Map<String, PendingSettings> changedSettingsMap =
+          Maps.filterValues(pendingSettingsMap, pendingSettings -> pendingSettings.changed);
+      List<String> addedSettingsKeys = Lists.newArrayList();
+      List<String> removedSettingsKeys = Lists.newArrayList();
+      changedSettingsMap.forEach((settingsKey, pendingSettings) -> {
+        // Only the first settings of a kind could be missing from the manifest, and only the
+        // last settings of a kind removed should remove it from the manifest.
+        StoredSettingsList settingsList = pendingSettings.settingsList;
+        if (settingsList.isEmpty()) {
+          if (!pendingSettings.wasEmpty || settingsList.isDeleted()) {
+            removedSettingsKeys.add(settingsKey);
+          }
+        } else if (pendingSettings.wasEmpty) {
+          addedSettingsKeys.add(settingsKey);
+        }
+      });
+      // The settings keys are added to the manifest before their settings are written and removed
+      // after, so that no settings are ever stored under a settings key missing from the manifest.
+      if (!writeBehind) {
+        manifest.update(addedSettingsKeys, Collections.emptySet());
+      }
+      changedSettingsMap.forEach((settingsKey, pendingSettings) -> {
+        StoredSettingsList settingsList = pendingSettings.settingsList;
+        if (writeBehind) {
+          dirtySettings.put(settingsKey, settingsList);
+        } else {
+          settingsList.flush();
+          dirtySettings.remove(settingsKey);
+          stampVersion(settingsKey);
+          metrics.writeCompleted();
+        }
+        getSettingsVersion(settingsKey).incrementAndGet();
+      });
+      if (writeBehind) {
+        manifest.updateLater(addedSettingsKeys, removedSettingsKeys);
+      } else {
+        manifest.update(Collections.emptySet(), removedSettingsKeys);
+      }
+
+      changedSettingsMap.forEach((settingsKey, pendingSettings) -> {
+        if (writeBehind) {
+          settingsCache.invalidate(settingsKey); // Let the others know as they're written.
+        } else {
+          settingsChanged(settingsKey, pendingSettings.settingsList);
+        }
+        publishChanges(settingsKey, pendingSettings.settingsList);
+      });
+    }
+
+    /**
+     * Publishes the changes of the specified settings to the change feed, a change for each changed
+     * settings ID of keyed settings, or a single change of the whole settings key otherwise.
+     */
+    private void publishChanges(String settingsKey, StoredSettingsList settingsList) {
+      if (settingsList instanceof KeyedSettingsList && !settingsList.isDeleted()) {
+        ((KeyedSettingsList) settingsList).getChangedSettingsIds()
+            .forEach(settingsId -> changeFeed.publish(settingsKey, settingsId));
+      } else {
+        changeFeed.publish(settingsKey, null);
+      }
+    }
+
+  }
+
+  private static void lockAll(Iterable<Lock> locks) {
+    locks.forEach(Lock::lock);
+  }
+
+  private static void unlockAll(Iterable<Lock> locks) {
+    locks.forEach(Lock::unlock);
+  }
+
+  private static class VersionCheck {
+
+    @Nullable
+    private final String versionStamp;
+    private final long checkedAt;
+
+    private VersionCheck(@Nullable String versionStamp, long checkedAt) {
+      this.versionStamp = versionStamp;
+      this.checkedAt = checkedAt;
+    }
+
+  }
+
+  /**
+   * The settings of a settings key opened for reading them once without caching them, along with
+   * the version of the settings they're opened at. The settings are read in full as they're opened,
+   * except for the pages of paged settings, which are read one at a time while the settings key is
+   * locked, as long as the settings have not been changed since they're opened.
+   */
+  class UncachedSettings {
+
+    private final String settingsKey;
+    private final StoredSettingsList settingsList;
+    private final long version;
+
+    private UncachedSettings(String settingsKey, StoredSettingsList settingsList, long version) {
+      this.settingsKey = settingsKey;
+      this.settingsList = settingsList;
+      this.version = version;
+    }
+
+    int size() {
+      return settingsList.size();
+    }
+
+    boolean isKeyed() {
+      return settingsList instanceof KeyedSettingsList;
+    }
+
+    /**
+     * Returns the keyed settings by settings ID, which are read in full as they're opened.
+     */
+    Map<String, String> getSettingsMap() {
+      return ((KeyedSettingsList) settingsList).getSettingsMap();
+    }
+
+    /**
+     * Streams the settings from the specified index, reading the pages of paged settings as the
+     * stream is consumed.
+     *
+     * @throws ConcurrentModificationException as the stream is consumed, if the settings are changed
+     *         before all their pages are read
+     */
+    Stream<String> stream(int fromIndex) {
+      if (!(settingsList instanceof PagedSettingsList)) {
+        return settingsList.streamOnce(fromIndex);
+      }
+      int pageSize = ((PagedSettingsList) settingsList).getPageSize();
+      int size = settingsList.size();
+      return IntStream.range(fromIndex / pageSize, (size + pageSize - 1) / pageSize).boxed()
+          .flatMap(pageIndex -> readPage(Math.max(fromIndex, pageIndex * pageSize),
+              Math.min((pageIndex + 1) * pageSize, size)).stream());
+    }
+
+    private List<String> readPage(int fromIndex, int toIndex) {
+      Lock lock = settingsLocks.get(settingsKey);
+      lock.lock();
+      try {
+        if (getSettingsVersion(settingsKey).get() != version) {
+          throw new ConcurrentModificationException("The settings of " + settingsKey + " were changed while read.");
+        }
+        return settingsList.streamOnce(fromIndex)
+            .limit(toIndex - fromIndex)
+            .collect(Collectors.toList());
+      } finally {
+        lock.unlock();
+      }
+    }
+
+  }
+
+  private static class PendingSettings {
+
+    private final StoredSettingsList settingsList;
+    private final boolean wasEmpty;
+    private final long version;
+    private final int modificationCount;
+    private boolean changed;
+
+    private PendingSettings(StoredSettingsList settingsList, boolean wasEmpty, long version) {
+      this.settingsList = settingsList;
+      this.wasEmpty = wasEmpty;
+      this.version = version;
+      this.modificationCount = settingsList.getModificationCount();
+    }
+
+  }
+
   protected abstract class SettingsAdapter {
 
     protected final String settingsKey;
@@ -258,6 +2118,19 @@ public class SettingsManager {
       return ImmutableList.copyOf(toListInternal());
     }
 
+    /**
+     * Reads the settings list for modifying it in one go, the modified list should be saved back
+     * with store(list).
+     */
+    private List<String> load() {
+      List<String> settingsList = (List<String>) pluginSettings.get(settingsKey);
+      return settingsList != null ? Lists.newArrayList(settingsList) : Lists.newArrayList();
+    }
+
+    private void store(List<String> settingsList) {
+      pluginSettings.put(settingsKey, settingsList);
+    }
+
     public int size() {
       return toListInternal().size();
     }
@@ -302,30 +2175,137 @@ public class SettingsManager {
 
   /**
    * Provide a manifest of the settings so that we are not agnostic about what are existing.
+   *
+   * The settings keys are loaded into a set once, so that querying the manifest doesn't access the
+   * plugin settings. The set is replaced as the manifest is written, and loaded again once another
+   * settings manager of the same plugin has changed the settings.
+   *
+   * The settings keys of the settings written behind are added and removed pending, on top of the
+   * loaded set, and are only written to the manifest as their settings are flushed.
    */
   private class SettingsManifest {
 
     private final String settingsKey = "manifest";
     private final SequencedSettingsAdapter adapter = getSequencedSettingsAdapter(settingsKey);
+    private volatile Set<String> settingsKeys;
+    private final Set<String> pendingAddedSettingsKeys = Sets.newConcurrentHashSet();
+    private final Set<String> pendingRemovedSettingsKeys = Sets.newConcurrentHashSet();
 
-    public void add(String settingsKey) {
-      if (!adapter.contains(settingsKey)) {
-        adapter.add(settingsKey);
+    private Set<String> getSettingsKeys() {
+      Set<String> settingsKeys = this.settingsKeys;
+      if (settingsKeys != null && isStale(settingsKey)) {
+        invalidate();
+        settingsKeys = null;
+      }
+      if (settingsKeys == null) {
+        synchronized (this) {
+          settingsKeys = this.settingsKeys;
+          if (settingsKeys == null) {
+            checkVersion(settingsKey);
+            this.settingsKeys = settingsKeys = ImmutableSet.copyOf(adapter.toListInternal());
+          }
+        }
       }
+      return settingsKeys;
+    }
+
+    public void add(String settingsKey) {
+      update(Collections.singleton(settingsKey), Collections.emptySet());
     }
 
     public void remove(String settingsKey) {
-      if (adapter.contains(settingsKey)) {
-        adapter.remove(settingsKey);
-      }
+      update(Collections.emptySet(), Collections.singleton(settingsKey));
     }
 
     public boolean has(String settingsKey) {
-      return adapter.contains(settingsKey);
+      return pendingAddedSettingsKeys.contains(settingsKey)
+          || !pendingRemovedSettingsKeys.contains(settingsKey) && getSettingsKeys().contains(settingsKey);
+    }
+
+    /**
+     * Adds and removes the specified settings keys, reading and writing the manifest only once.
+     */
+    public void update(Collection<String> addedSettingsKeys, Collection<String> removedSettingsKeys) {
+      if (addedSettingsKeys.isEmpty() && removedSettingsKeys.isEmpty()) {
+        return;
+      }
+      synchronized (this) {
+        // The manifest is read again rather than written from the set, not to lose the settings
+        // keys that another settings manager has written in the meantime.
+        List<String> manifestList = adapter.load();
+        boolean changed = manifestList.removeAll(removedSettingsKeys);
+        for (String settingsKey : addedSettingsKeys) {
+          if (!manifestList.contains(settingsKey)) {
+            changed |= manifestList.add(settingsKey);
+          }
+        }
+        if (changed) {
+          adapter.store(manifestList);
+          stampVersion(settingsKey);
+          getSettingsVersion(settingsKey).incrementAndGet();
+        }
+        settingsKeys = ImmutableSet.copyOf(manifestList);
+      }
+    }
+
+    /**
+     * Adds and removes the specified settings keys of the settings written behind, pending until
+     * they're written as the settings are flushed.
+     */
+    public synchronized void updateLater(Collection<String> addedSettingsKeys,
+                                         Collection<String> removedSettingsKeys) {
+      if (addedSettingsKeys.isEmpty() && removedSettingsKeys.isEmpty()) {
+        return;
+      }
+      pendingRemovedSettingsKeys.removeAll(addedSettingsKeys);
+      pendingAddedSettingsKeys.addAll(addedSettingsKeys);
+      pendingAddedSettingsKeys.removeAll(removedSettingsKeys);
+      pendingRemovedSettingsKeys.addAll(removedSettingsKeys);
+      getSettingsVersion(settingsKey).incrementAndGet();
+    }
+
+    public boolean isPendingAdded(String settingsKey) {
+      return pendingAddedSettingsKeys.contains(settingsKey);
+    }
+
+    /**
+     * Writes the pending settings keys added, before their settings are written.
+     */
+    public synchronized void writePendingAdded() {
+      List<String> addedSettingsKeys = ImmutableList.copyOf(pendingAddedSettingsKeys);
+      update(addedSettingsKeys, Collections.emptySet());
+      pendingAddedSettingsKeys.removeAll(addedSettingsKeys);
+    }
+
+    /**
+     * Writes the pending settings keys removed, except for the specified settings keys of which the
+     * settings are still to be written.
+     */
+    public synchronized void writePendingRemoved(Set<String> unwrittenSettingsKeys) {
+      List<String> removedSettingsKeys = ImmutableList.copyOf(
+          Sets.difference(pendingRemovedSettingsKeys, unwrittenSettingsKeys));
+      update(Collections.emptySet(), removedSettingsKeys);
+      pendingRemovedSettingsKeys.removeAll(removedSettingsKeys);
+    }
+
+    /**
+     * Drops the loaded settings keys, they're loaded again the next time the manifest is queried.
+     */
+    public void invalidate() {
+      settingsKeys = null;
+      getSettingsVersion(settingsKey).incrementAndGet();
+    }
+
+    public String getTag() {
+      if (isStale(settingsKey)) {
+        invalidate();
+      }
+      return SettingsManager.this.getTag(settingsKey);
     }
 
     public List<String> getList() {
-      return adapter.toList();
+      return ImmutableList.copyOf(Sets.union(
+          Sets.difference(getSettingsKeys(), pendingRemovedSettingsKeys), pendingAddedSettingsKeys));
     }
 
   }
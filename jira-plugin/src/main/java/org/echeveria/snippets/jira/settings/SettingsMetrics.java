@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters and timings of a settings manager, e.g. to tell how many writes to the plugin
+ * settings are saved by skipping the settings saved unchanged.
+ */
+public class SettingsMetrics {
+
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicLong skippedWrites = new AtomicLong();
+  private final AtomicLong staleSettings = new AtomicLong();
+  private final AtomicLong migratedSettings = new AtomicLong();
+  private final AtomicLong warmUpNanos = new AtomicLong(-1);
+
+  /**
+   * Returns the number of times the settings of a settings key have been written to the plugin
+   * settings.
+   * @return the number of times the settings of a settings key have been written
+   */
+  public long getWrites() {
+    return writes.get();
+  }
+
+  /**
+   * Returns the number of settings saved unchanged, of which the writes have been skipped.
+   * @return the number of settings saved unchanged
+   */
+  public long getSkippedWrites() {
+    return skippedWrites.get();
+  }
+
+  /**
+   * Returns the number of times the cached settings of a settings key have been found changed by
+   * another node, see {@link SettingsManager#setVersionCheckInterval(long, TimeUnit)}.
+   * @return the number of times the cached settings have been found changed by another node
+   */
+  public long getStaleSettings() {
+    return staleSettings.get();
+  }
+
+  /**
+   * Returns the number of settings that have been migrated from an older schema version as they're
+   * read, see {@link SettingsManager#registerMigration(Class, int, java.util.function.UnaryOperator)}.
+   * @return the number of settings that have been migrated as they're read
+   */
+  public long getMigratedSettings() {
+    return migratedSettings.get();
+  }
+
+  /**
+   * Returns the time it took to warm up the settings, see {@link SettingsManager#warmUp()}.
+   * @param unit of the time
+   * @return the time it took to warm up the settings, or -1 if they're not warmed up yet
+   */
+  public long getWarmUpTime(TimeUnit unit) {
+    long nanos = warmUpNanos.get();
+    return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  void writeCompleted() {
+    writes.incrementAndGet();
+  }
+
+  void writeSkipped() {
+    skippedWrites.incrementAndGet();
+  }
+
+  void staleSettingsFound() {
+    staleSettings.incrementAndGet();
+  }
+
+  void settingsMigrated() {
+    migratedSettings.incrementAndGet();
+  }
+
+  void warmUpCompleted(long nanos) {
+    warmUpNanos.set(nanos);
+  }
+
+  @Override
+  public String toString() {
+    return "SettingsMetrics{writes=" + writes + ", skippedWrites=" + skippedWrites
+        + ", staleSettings=" + staleSettings + ", migratedSettings=" + migratedSettings
+        + ", warmUpMillis=" + getWarmUpTime(TimeUnit.MILLISECONDS) + "}";
+  }
+
+}
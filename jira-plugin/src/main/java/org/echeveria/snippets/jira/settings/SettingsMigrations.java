@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * The migrations of the settings classes from a schema version to the next, which are applied to
+ * the JSON trees of the settings stored in an older schema version as they're read. The settings
+ * stored before any migration was registered are of the schema version 0.
+ */
+final class SettingsMigrations {
+
+  /**
+   * The name of the field of the schema version in the settings, see {@link Settings}.
+   */
+  static final String SCHEMA_VERSION = "schemaVersion";
+
+  private final ConcurrentMap<Class<?>, List<UnaryOperator<JsonObject>>> migrations = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Class<?>> settingsClasses = Maps.newConcurrentMap();
+
+  synchronized void register(Class<?> settingsClass, int fromVersion, UnaryOperator<JsonObject> migration) {
+    List<UnaryOperator<JsonObject>> classMigrations =
+        migrations.computeIfAbsent(settingsClass, key -> new CopyOnWriteArrayList<>());
+    if (fromVersion != classMigrations.size()) {
+      throw new IllegalArgumentException("The migration from the schema version " + classMigrations.size()
+          + " of " + settingsClass.getName() + " is to be registered next.");
+    }
+    classMigrations.add(migration);
+  }
+
+  /**
+   * Returns the current schema version of the specified class, i.e. the number of its migrations.
+   */
+  int getSchemaVersion(Class<?> settingsClass) {
+    List<UnaryOperator<JsonObject>> classMigrations = migrations.get(settingsClass);
+    return classMigrations != null ? classMigrations.size() : 0;
+  }
+
+  /**
+   * Returns the current schema version of the class of the specified name, or 0 if no migration of
+   * the class has been registered.
+   */
+  int getSchemaVersionByClassName(String settingsClassName) {
+    for (Map.Entry<Class<?>, List<UnaryOperator<JsonObject>>> entry : migrations.entrySet()) {
+      if (entry.getKey().getName().equals(settingsClassName)) {
+        return entry.getValue().size();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Records the class of the settings of the specified settings key, as settings of a class with
+   * migrations are read or saved, for the settings that are written as JSON.
+   *
+   * @return true if the class had not been recorded of the settings key yet
+   */
+  boolean putSettingsClass(String settingsKey, Class<?> settingsClass) {
+    return settingsClasses.put(settingsKey, settingsClass) != settingsClass;
+  }
+
+  @Nullable
+  Class<?> getSettingsClass(String settingsKey) {
+    return settingsClasses.get(settingsKey);
+  }
+
+  static int getSchemaVersion(JsonObject settings) {
+    JsonElement schemaVersion = settings.get(SCHEMA_VERSION);
+    return schemaVersion != null && !schemaVersion.isJsonNull() ? schemaVersion.getAsInt() : 0;
+  }
+
+  /**
+   * Migrates the specified settings from their schema version to the current schema version of the
+   * specified class.
+   *
+   * @return the migrated settings, of the current schema version
+   */
+  JsonObject migrate(Class<?> settingsClass, JsonObject settings) {
+    List<UnaryOperator<JsonObject>> classMigrations = migrations.get(settingsClass);
+    for (int version = getSchemaVersion(settings); version < classMigrations.size(); version++) {
+      settings = classMigrations.get(version).apply(settings);
+    }
+    settings.addProperty(SCHEMA_VERSION, classMigrations.size());
+    return settings;
+  }
+
+}
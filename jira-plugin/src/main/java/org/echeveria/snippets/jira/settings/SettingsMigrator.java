@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Migrates and writes back the settings of an older schema version of a settings manager in the
+ * background, once they're found as they're read, see
+ * {@link SettingsManager#registerMigration(Class, int, java.util.function.UnaryOperator)}.
+ */
+final class SettingsMigrator {
+
+  private static final Logger logger = LoggerFactory.getLogger(SettingsMigrator.class);
+
+  /**
+   * The number of the settings that are migrated and written back in a batch.
+   */
+  private static final int BATCH_SIZE = 500;
+
+  private final SettingsManager settingsManager;
+  private final Set<String> migratingSettingsKeys = Sets.newConcurrentHashSet();
+
+  SettingsMigrator(SettingsManager settingsManager) {
+    this.settingsManager = settingsManager;
+  }
+
+  /**
+   * Migrates and writes back the settings of the specified settings key in the background, in
+   * batches, once for as long as they're being migrated. The batches go on up to the number of the
+   * stored settings, whether the settings of a batch are already migrated or not.
+   */
+  void schedule(String settingsKey, Class<?> classOfT) {
+    if (!migratingSettingsKeys.add(settingsKey)) {
+      return;
+    }
+    settingsManager.getAsyncExecutor().submitWrite(Collections.singleton(settingsKey), () -> {
+      try {
+        for (int fromIndex = 0; fromIndex < settingsManager.getSettingsCount(settingsKey); fromIndex += BATCH_SIZE) {
+          settingsManager.batch().migrate(settingsKey, classOfT, fromIndex, BATCH_SIZE).commit();
+        }
+      } catch (RuntimeException e) {
+        logger.error("Cannot migrate the settings of " + settingsKey + ", they'll be migrated as read.", e);
+      } finally {
+        migratingSettingsKeys.remove(settingsKey);
+      }
+      return null;
+    });
+  }
+
+}
@@ -23,31 +23,496 @@
 
 package org.echeveria.snippets.jira.settings;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.echeveria.snippets.jira.api.MyPluginComponent;
 
+import com.atlassian.jira.component.ComponentAccessor;
 import com.atlassian.jira.util.collect.MapBuilder;
 import com.atlassian.plugins.rest.common.security.AnonymousAllowed;
+import com.atlassian.sal.api.user.UserKey;
+import com.atlassian.sal.api.user.UserManager;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 /**
  * A resource of settings.
+ *
+ * The settings of each settings key are under {@code /settings/keys/{settingsKey}}, apart from the
+ * manifest, the changes, the export and the import of the settings, so that no settings key is
+ * shadowed by them.
  */
 @Path("/settings")
 public class SettingsResource {
 
+  private static final String NDJSON = "application/x-ndjson";
+  private static final String GZIP = "application/gzip";
+  private static final String EVENT_STREAM = "text/event-stream";
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * How long a stream of settings changes is kept open, shorter than proxies tend to time out idle
+   * responses, the clients reconnect and resume from the last change they've seen.
+   */
+  private static final long CHANGES_STREAM_MILLIS = TimeUnit.SECONDS.toMillis(25);
+  private static final long CHANGES_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final Gson gson = new Gson();
+
   private final SettingsManager settingsManager = SettingsManager.getOrCreate(MyPluginComponent.PLUGIN_KEY);
 
+  /**
+   * Returns the manifest of the settings, tagged with an entity tag, or not modified without the
+   * manifest being read if it matches the tag in {@code If-None-Match}.
+   *
+   * @param request to evaluate {@code If-None-Match} of
+   * @return the manifest, or not modified
+   */
   @GET
   @Path("/manifest")
   @AnonymousAllowed
   @Produces(MediaType.APPLICATION_JSON)
-  public Response getManifest() {
-    return Response.ok(MapBuilder.build("manifest", settingsManager.getManifest())).build();
+  public Response getManifest(@Context Request request) {
+    // Tagged before the manifest is read, so that a change in between is never missed.
+    EntityTag entityTag = new EntityTag(settingsManager.getManifestTag());
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+    if (notModified != null) {
+      return notModified.cacheControl(revalidate()).build();
+    }
+    return Response.ok(MapBuilder.build("manifest", settingsManager.getManifest()))
+        .tag(entityTag)
+        .cacheControl(revalidate())
+        .build();
+  }
+
+  /**
+   * Streams the changes of the settings as server-sent events, each a {@code change} event of the
+   * settings key, the settings ID of keyed settings and the version of the change, see
+   * {@link SettingsManager#awaitChanges(long, long, TimeUnit)}. The stream starts with a
+   * {@code ready} event, and holds a {@code reset} event instead of the changes if the changes since
+   * the last event seen are no longer kept, or were of another node or before a restart, after which
+   * a client is to read all of the settings again. The events are numbered so that an
+   * {@code EventSource} resumes from the last event it has seen as it reconnects, which it does once
+   * the stream ends after about 25 seconds, as JAX-RS 1.1 cannot release the request thread while
+   * waiting for the changes. Only system administrators can stream the changes.
+   *
+   * @param lastEventId of the last event seen, sent by an {@code EventSource} as it reconnects
+   * @param since the ID of the last event seen, for the clients that cannot send the header
+   * @return the stream of the changes
+   */
+  @GET
+  @Path("/changes")
+  @Produces(EVENT_STREAM)
+  public Response getChanges(@HeaderParam("Last-Event-ID") String lastEventId, @QueryParam("since") String since) {
+    if (!isSystemAdmin()) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    String feedId = settingsManager.getChangeFeedId();
+    String cursor = lastEventId != null ? lastEventId : since;
+    long version = cursor == null ? settingsManager.getLastChangeVersion() : parseVersion(feedId, cursor);
+    StreamingOutput changes = outputStream -> {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+      writer.write("retry: " + CHANGES_RETRY_MILLIS + "\n\n");
+      long eventVersion = version;
+      if (eventVersion < 0) {
+        eventVersion = settingsManager.getLastChangeVersion();
+        writeEvent(writer, "reset", feedId, eventVersion, MapBuilder.build("version", eventVersion));
+      } else {
+        writeEvent(writer, "ready", feedId, eventVersion, MapBuilder.build("version", eventVersion));
+      }
+      writer.flush();
+      long deadline = System.currentTimeMillis() + CHANGES_STREAM_MILLIS;
+      long remaining;
+      try {
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+          List<SettingsChange> settingsChanges =
+              settingsManager.awaitChanges(eventVersion, remaining, TimeUnit.MILLISECONDS);
+          if (settingsChanges == null) {
+            eventVersion = settingsManager.getLastChangeVersion();
+            writeEvent(writer, "reset", feedId, eventVersion, MapBuilder.build("version", eventVersion));
+          } else {
+            for (SettingsChange settingsChange : settingsChanges) {
+              eventVersion = settingsChange.getVersion();
+              writeEvent(writer, "change", feedId, eventVersion, settingsChange);
+            }
+          }
+          writer.flush();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    return Response.ok(changes, EVENT_STREAM)
+        .cacheControl(revalidate())
+        .build();
+  }
+
+  /**
+   * Returns the version in the specified event ID, or -1 if it's not of the change feed, in which
+   * case the stream starts with a reset.
+   */
+  private static long parseVersion(String feedId, String eventId) {
+    if (!eventId.startsWith(feedId + "-")) {
+      return -1;
+    }
+    Long version = Longs.tryParse(eventId.substring(feedId.length() + 1));
+    return version != null ? version : -1;
+  }
+
+  private static void writeEvent(Writer writer, String event, String feedId, long version, Object data)
+      throws IOException {
+    writer.write("id: " + feedId + "-" + version + "\n");
+    writer.write("event: " + event + "\n");
+    writer.write("data: " + gson.toJson(data) + "\n\n");
+  }
+
+  /**
+   * Lists a page of the settings of the specified settings key, only the settings on the page are
+   * read, and they're streamed to the response as they're read, the settings stored as JSON as
+   * they're stored without being deserialized, see
+   * {@link SettingsManager#openSettingsJsonPage(String, int, int)}, so that even a page of all
+   * the settings of a large settings key takes little memory. The page is compressed with gzip if the
+   * client accepts it.
+   *
+   * The page is tagged with an entity tag of the settings taken along with the settings on the page,
+   * and not modified is returned without the settings being read if the settings are still of the
+   * tag in {@code If-None-Match}. Only system administrators can read the settings.
+   *
+   * @param settingsKey of the settings
+   * @param offset the index of the first settings on the page
+   * @param limit the maximum number of the settings on the page
+   * @param acceptEncoding the encodings the client accepts
+   * @param request to evaluate {@code If-None-Match} of
+   * @return the page of the settings, along with the total number of the settings, or not modified
+   */
+  @GET
+  @Path("/keys/{settingsKey}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getSettings(@PathParam("settingsKey") String settingsKey,
+                              @QueryParam("offset") @DefaultValue("0") int offset,
+                              @QueryParam("limit") @DefaultValue("50") int limit,
+                              @HeaderParam("Accept-Encoding") String acceptEncoding,
+                              @Context Request request) {
+    if (!isSystemAdmin()) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    if (offset < 0 || limit < 0) {
+      return Response.status(Response.Status.BAD_REQUEST).build();
+    }
+    boolean gzip = acceptsGzip(acceptEncoding);
+    // Each encoding is a representation of its own, with an entity tag of its own.
+    String tagSuffix = gzip ? "-gzip" : "";
+    Response.ResponseBuilder notModified =
+        request.evaluatePreconditions(new EntityTag(settingsManager.getSettingsTag(settingsKey) + tagSuffix));
+    if (notModified != null) {
+      return notModified.cacheControl(revalidate()).build();
+    }
+    if (!settingsManager.hasSettings(settingsKey)) {
+      return Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    // Tagged again along with the settings written, which may have changed since.
+    SettingsJsonPage settingsPage = settingsManager.openSettingsJsonPage(settingsKey, offset, limit);
+    EntityTag entityTag = new EntityTag(settingsPage.getTag() + tagSuffix);
+    StreamingOutput page = outputStream -> {
+      GZIPOutputStream gzipOutputStream = gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : null;
+      Writer writer = new BufferedWriter(new OutputStreamWriter(
+          gzipOutputStream != null ? gzipOutputStream : outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+      settingsPage.write(writer);
+      writer.flush();
+      if (gzipOutputStream != null) {
+        gzipOutputStream.finish();
+      }
+    };
+    Response.ResponseBuilder response = Response.ok(page)
+        .tag(entityTag)
+        .cacheControl(revalidate())
+        .header("Vary", "Accept-Encoding");
+    if (gzip) {
+      // Jira's own gzip filter leaves the responses already encoded alone.
+      response.header("Content-Encoding", "gzip");
+    }
+    return response.build();
+  }
+
+  /**
+   * Returns true if the specified {@code Accept-Encoding} accepts gzip, unless with a quality of 0.
+   */
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String encoding : acceptEncoding.split(",")) {
+      String[] parameters = encoding.trim().split(";");
+      if (parameters[0].trim().equalsIgnoreCase("gzip")) {
+        return parameters.length < 2 || !parameters[1].trim().matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the settings of the specified settings key and settings ID, the index of sequenced
+   * settings, as JSON written as it's stored, see
+   * {@link #getSettings(String, int, int, String, Request)}. Only system administrators can read the
+   * settings.
+   *
+   * @param settingsKey of the settings
+   * @param settingsId of keyed settings, or the index of sequenced settings
+   * @param request to evaluate {@code If-None-Match} of
+   * @return the settings, or not modified
+   */
+  @GET
+  @Path("/keys/{settingsKey}/{settingsId}")
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response getSettings(@PathParam("settingsKey") String settingsKey,
+                              @PathParam("settingsId") String settingsId,
+                              @Context Request request) {
+    if (!isSystemAdmin()) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    EntityTag entityTag = new EntityTag(settingsManager.getSettingsTag(settingsKey));
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+    if (notModified != null) {
+      return notModified.cacheControl(revalidate()).build();
+    }
+    if (!settingsManager.hasSettings(settingsKey)) {
+      return Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    String settings = settingsManager.getSettingsJson(settingsKey, settingsId);
+    Integer index = Ints.tryParse(settingsId);
+    if (settings == null && index != null) {
+      settings = settingsManager.getSettingsJson(settingsKey, index);
+    }
+    if (settings == null) {
+      return Response.status(Response.Status.NOT_FOUND).build();
+    }
+    return Response.ok(settings)
+        .tag(entityTag)
+        .cacheControl(revalidate())
+        .build();
+  }
+
+  /**
+   * Adds the settings in the specified JSON array to the settings of the specified settings key, in
+   * one batch, see {@link SettingsManager.Batch#addJson(String, JsonObject)}. Only system
+   * administrators can change the settings.
+   *
+   * @param settingsKey of the settings
+   * @param body the JSON array of the settings
+   * @return the settings added, with their settings IDs, or a bad request if they cannot be added
+   */
+  @POST
+  @Path("/keys/{settingsKey}")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response addSettings(@PathParam("settingsKey") String settingsKey, String body) {
+    return changeSettings(body, settings -> {
+      SettingsManager.Batch batch = settingsManager.batch();
+      settings.forEach(element -> batch.addJson(settingsKey, element.getAsJsonObject()));
+      batch.commit();
+      return Response.ok(gson.toJson(settings)).build();
+    });
+  }
+
+  /**
+   * Updates the existing settings of the settings IDs in the specified JSON array, in one batch,
+   * see {@link SettingsManager.Batch#updateJson(String, JsonObject)}. Only system administrators can
+   * change the settings.
+   *
+   * @param settingsKey of the settings
+   * @param body the JSON array of the settings
+   * @return the settings updated, or a bad request if they cannot be updated
+   */
+  @PUT
+  @Path("/keys/{settingsKey}")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response updateSettings(@PathParam("settingsKey") String settingsKey, String body) {
+    return changeSettings(body, settings -> {
+      SettingsManager.Batch batch = settingsManager.batch();
+      settings.forEach(element -> batch.updateJson(settingsKey, element.getAsJsonObject()));
+      batch.commit();
+      return Response.ok(gson.toJson(settings)).build();
+    });
+  }
+
+  /**
+   * Removes the settings of the settings IDs in the specified JSON array, the settings IDs of keyed
+   * settings and the indexes of sequenced settings, in one batch. Only system administrators can
+   * change the settings.
+   *
+   * @param settingsKey of the settings
+   * @param body the JSON array of the settings IDs
+   * @return no content, or a bad request if the settings cannot be removed
+   */
+  @DELETE
+  @Path("/keys/{settingsKey}")
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Response removeSettings(@PathParam("settingsKey") String settingsKey, String body) {
+    return changeSettings(body, settingsIds -> {
+      SettingsManager.Batch batch = settingsManager.batch();
+      List<Integer> indexes = Lists.newArrayList();
+      for (JsonElement settingsId : settingsIds) {
+        if (settingsId.getAsJsonPrimitive().isString()) {
+          batch.remove(Settings.Keyed.create(settingsKey, settingsId.getAsString()));
+        } else {
+          indexes.add(settingsId.getAsInt());
+        }
+      }
+      // From the last, so that the indexes of the others are not shifted.
+      indexes.stream()
+          .distinct()
+          .sorted(Comparator.reverseOrder())
+          .forEach(index -> batch.remove(Settings.Sequenced.create(settingsKey, index)));
+      batch.commit();
+      return Response.noContent().build();
+    });
+  }
+
+  /**
+   * Parses the specified JSON array and changes the settings with it, telling the bad requests
+   * apart from the others.
+   */
+  private Response changeSettings(String body, Function<JsonArray, Response> change) {
+    if (!isSystemAdmin()) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    try {
+      return change.apply(new JsonParser().parse(body).getAsJsonArray());
+    } catch (JsonParseException | IllegalArgumentException | IllegalStateException | ClassCastException e) {
+      return Response.status(Response.Status.BAD_REQUEST)
+          .entity(MapBuilder.build("message", e.getMessage()))
+          .build();
+    } catch (ConcurrentModificationException e) {
+      return Response.status(Response.Status.CONFLICT)
+          .entity(MapBuilder.build("message", e.getMessage()))
+          .build();
+    }
+  }
+
+  /**
+   * Exports the settings of every settings key as newline-delimited JSON, streamed as they're read,
+   * see {@link SettingsManager#exportSettings(java.io.Writer)}. Only system administrators can export
+   * the settings.
+   *
+   * @param gzip true to compress the export with gzip
+   * @return the export, as an attachment
+   */
+  @GET
+  @Path("/export")
+  @Produces({NDJSON, GZIP})
+  public Response exportSettings(@QueryParam("gzip") @DefaultValue("false") boolean gzip) {
+    if (!isSystemAdmin()) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    StreamingOutput export = outputStream -> {
+      GZIPOutputStream gzipOutputStream = gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : null;
+      Writer writer = new BufferedWriter(new OutputStreamWriter(
+          gzipOutputStream != null ? gzipOutputStream : outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+      settingsManager.exportSettings(writer);
+      writer.flush();
+      if (gzipOutputStream != null) {
+        gzipOutputStream.finish();
+      }
+    };
+    return Response.ok(export, gzip ? GZIP : NDJSON)
+        .header("Content-Disposition", "attachment; filename=\"settings.ndjson" + (gzip ? ".gz\"" : "\""))
+        .build();
+  }
+
+  /**
+   * Imports the settings exported by {@link #exportSettings(boolean)}, gzip-compressed or not,
+   * replacing the settings of the settings keys in the import as they're read, see
+   * {@link SettingsManager#importSettings(java.io.Reader)}. Only system administrators can import
+   * the settings.
+   *
+   * @param inputStream of the export
+   * @return the number of the settings imported, or a bad request if the import is not an export
+   */
+  @POST
+  @Path("/import")
+  @Consumes({NDJSON, GZIP, MediaType.APPLICATION_OCTET_STREAM})
+  @Produces(MediaType.APPLICATION_JSON)
+  public Response importSettings(InputStream inputStream) throws IOException {
+    if (!isSystemAdmin()) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    // Told apart by the magic number rather than the content type, which tools tend to get wrong.
+    PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, 2);
+    byte[] magic = new byte[2];
+    int length = ByteStreams.read(pushbackInputStream, magic, 0, magic.length);
+    if (length > 0) {
+      pushbackInputStream.unread(magic, 0, length);
+    }
+    boolean gzip = length == 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b;
+    InputStream importStream = gzip ? new GZIPInputStream(pushbackInputStream, BUFFER_SIZE) : pushbackInputStream;
+
+    try {
+      int imported = settingsManager.importSettings(new InputStreamReader(importStream, StandardCharsets.UTF_8));
+      return Response.ok(MapBuilder.build("imported", imported)).build();
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      return Response.status(Response.Status.BAD_REQUEST)
+          .entity(MapBuilder.build("message", e.getMessage()))
+          .build();
+    }
+  }
+
+  /**
+   * Lets the responses be cached, but only used once revalidated with their entity tags.
+   */
+  private static CacheControl revalidate() {
+    CacheControl cacheControl = new CacheControl();
+    cacheControl.setNoCache(true);
+    return cacheControl;
+  }
+
+  private static boolean isSystemAdmin() {
+    UserManager userManager = ComponentAccessor.getOSGiComponentInstanceOfType(UserManager.class);
+    UserKey userKey = userManager.getRemoteUserKey();
+    return userKey != null && userManager.isSystemAdmin(userKey);
   }
 
 }
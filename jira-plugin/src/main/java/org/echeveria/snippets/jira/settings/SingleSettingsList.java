@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.List;
+
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.google.common.collect.Lists;
+
+/**
+ * The settings of a settings key stored as a single list in the plugin settings, which is read and
+ * written as a whole.
+ */
+class SingleSettingsList extends StoredSettingsList {
+
+  private final List<String> settingsList;
+
+  SingleSettingsList(PluginSettings pluginSettings, String storageKey, List<String> settingsList) {
+    super(pluginSettings, storageKey);
+    this.settingsList = Lists.newArrayList(settingsList);
+  }
+
+  private SingleSettingsList(SingleSettingsList settingsList) {
+    super(settingsList);
+    this.settingsList = Lists.newArrayList(settingsList.settingsList);
+  }
+
+  @Override
+  public int size() {
+    return settingsList.size();
+  }
+
+  @Override
+  public String get(int index) {
+    return settingsList.get(index);
+  }
+
+  @Override
+  public String set(int index, String settingsJson) {
+    String returnValue = settingsList.set(index, settingsJson);
+    setModified();
+    return returnValue;
+  }
+
+  @Override
+  public void add(int index, String settingsJson) {
+    settingsList.add(index, settingsJson);
+    setModified();
+  }
+
+  @Override
+  public String remove(int index) {
+    String returnValue = settingsList.remove(index);
+    setModified();
+    return returnValue;
+  }
+
+  @Override
+  public void clear() {
+    settingsList.clear();
+    setModified();
+  }
+
+  @Override
+  StoredSettingsList snapshot() {
+    return new SingleSettingsList(pluginSettings, storageKey, settingsList);
+  }
+
+  @Override
+  StoredSettingsList copy() {
+    return new SingleSettingsList(this);
+  }
+
+  @Override
+  void flush() {
+    if (!isModified()) {
+      return;
+    }
+    if (isDeleted() && settingsList.isEmpty()) {
+      pluginSettings.remove(storageKey);
+    } else {
+      pluginSettings.put(storageKey, settingsList);
+    }
+  }
+
+}
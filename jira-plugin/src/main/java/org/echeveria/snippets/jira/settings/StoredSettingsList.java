@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the "Software"), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify,
+ * merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies
+ * or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.AbstractList;
+import java.util.stream.Stream;
+
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+
+/**
+ * The settings of a settings key as a java.util.List, in the layout the settings are stored in the
+ * plugin settings.
+ *
+ * The list is read from the plugin settings as needed, while the modifications are made in memory
+ * and written to the plugin settings only on flush().
+ */
+abstract class StoredSettingsList extends AbstractList<String> {
+
+  protected final PluginSettings pluginSettings;
+  protected final String storageKey;
+
+  private boolean modified;
+  private boolean deleted;
+
+  protected StoredSettingsList(PluginSettings pluginSettings, String storageKey) {
+    this.pluginSettings = pluginSettings;
+    this.storageKey = storageKey;
+  }
+
+  /**
+   * Copies the state of the specified list, whether it's modified or to be deleted, see copy().
+   */
+  protected StoredSettingsList(StoredSettingsList settingsList) {
+    this(settingsList.pluginSettings, settingsList.storageKey);
+    this.modified = settingsList.modified;
+    this.deleted = settingsList.deleted;
+  }
+
+  /**
+   * Returns true if the list has been modified since it's read.
+   * @return true if the list has been modified since it's read
+   */
+  boolean isModified() {
+    return modified;
+  }
+
+  /**
+   * Returns true if the list is to be deleted from the plugin settings.
+   * @return true if the list is to be deleted from the plugin settings
+   */
+  boolean isDeleted() {
+    return deleted;
+  }
+
+  /**
+   * Returns the number of modifications made to the list since it's read, to tell whether a series
+   * of modifications has changed anything.
+   * @return the number of modifications made to the list
+   */
+  int getModificationCount() {
+    return modCount;
+  }
+
+  protected void setModified() {
+    modified = true;
+    modCount++;
+  }
+
+  /**
+   * Removes all settings from the list, and the list itself from the plugin settings on flush(),
+   * unless settings are added again before that.
+   */
+  void delete() {
+    clear();
+    deleted = true;
+    setModified();
+  }
+
+  /**
+   * Returns the list as keyed settings, to be changed by their settings IDs.
+   * @return the list as keyed settings
+   * @throws IllegalStateException if the settings are sequenced rather than keyed
+   */
+  KeyedSettingsList asKeyed() {
+    throw new IllegalStateException("The settings are sequenced rather than keyed.");
+  }
+
+  /**
+   * Checks that the settings are sequenced, to be changed by their indexes.
+   * @throws IllegalStateException if the settings are keyed rather than sequenced
+   */
+  void checkSequenced() {
+  }
+
+  /**
+   * Returns a copy of the list as it is now, including the modifications not written yet, which is
+   * read from memory.
+   * @return a copy of the list as it is now
+   */
+  StoredSettingsList snapshot() {
+    return new SingleSettingsList(pluginSettings, storageKey, this);
+  }
+
+  /**
+   * Returns a copy of the list in the same layout, including the modifications not written yet,
+   * which can be modified and written in place of the list, leaving the list as it is.
+   * @return a copy of the list in the same layout
+   */
+  abstract StoredSettingsList copy();
+
+  /**
+   * Streams the settings of the list for going through them once, without keeping more of them in
+   * memory than it takes to read them.
+   * @return the stream of the settings
+   */
+  Stream<String> streamOnce() {
+    return streamOnce(0);
+  }
+
+  /**
+   * Streams the settings of the list from the specified index, see {@link #streamOnce()}.
+   * @param fromIndex the index of the first settings to stream
+   * @return the stream of the settings
+   */
+  Stream<String> streamOnce(int fromIndex) {
+    return stream().skip(fromIndex);
+  }
+
+  /**
+   * Writes the modifications of the list to the plugin settings.
+   */
+  abstract void flush();
+
+}
@@ -7,24 +7,264 @@ define('echeveria/settings/viewer', [
 ], function (EcheveriaDialog, Reasons, Types, Events, $) {
     'use strict';
 
+    // Keep in sync with the height of the rows in settings-viewer.css.
+    var ROW_HEIGHT = 30;
+    // The rows rendered above and below the visible ones, so that scrolling a little shows no gap.
+    var OVERSCAN = 10;
+    // The number of the settings fetched at once.
+    var PAGE_SIZE = 100;
+    // The number of the fetched pages kept, the least recently used ones are dropped.
+    var MAX_CACHED_PAGES = 50;
+
+    var restUrl = function restUrl (path) {
+        return AJS.contextPath() + '/rest/jira-snippets/1.0/settings' + path;
+    };
+
     var SettingsViewerDialog = EcheveriaDialog.extend({
 
         init: function init(options) {
             var defaults = {
                 _config: {
-                    dialog: '#settings-viwer-dialog'
+                    dialog: '#settings-viwer-dialog',
+                    key: '#settings-viewer-key',
+                    total: '#settings-viewer-total',
+                    viewport: '#settings-viewer-viewport'
                 }
             };
 
             options = $.extend(true, defaults, options);
 
             this._super(options);
+
+            this.settingsKeys = [];
+            this.settingsKey = null;
+            this.total = 0;
+            this.pages = {};
+            this.pageOrder = [];
+            this.renderPending = false;
+            // The version of the last change of the settings that the rows were fetched after.
+            this.changeVersion = -1;
+        },
+
+        initElements: function initElements () {
+            this._super();
+
+            var _config = this.options._config;
+            var instance = this;
+
+            this.$key = $(_config.key);
+            this.$total = $(_config.total);
+            this.$viewport = $(_config.viewport);
+            this.$spacer = this.$viewport.find('.settings-viewer-spacer');
+            this.$rows = this.$viewport.find('tbody');
+
+            this.$key.change(function () {
+                instance._selectSettingsKey(instance.$key.val());
+            });
+            this.$viewport.scroll(function () {
+                instance._scheduleRender();
+            });
+
+            this.ajsDialog.on('show', function () {
+                instance._loadManifest();
+                instance._followChanges();
+            });
+            this.ajsDialog.on('hide', function () {
+                instance._stopFollowingChanges();
+            });
         },
 
         _getHeaderText: function _getHeaderText () {
             return 'Settings Viewer';
         },
 
+        _loadManifest: function _loadManifest () {
+            var instance = this;
+            $.getJSON(restUrl('/manifest')).done(function (data) {
+                var settingsKeys = instance.settingsKeys = data.manifest.slice().sort();
+                instance.$key.empty();
+                $.each(settingsKeys, function (i, settingsKey) {
+                    instance.$key.append($('<option/>').val(settingsKey).text(settingsKey));
+                });
+                if (instance.settingsKey !== null && $.inArray(instance.settingsKey, settingsKeys) >= 0) {
+                    instance.$key.val(instance.settingsKey);
+                } else {
+                    instance._selectSettingsKey(settingsKeys.length > 0 ? settingsKeys[0] : null);
+                }
+            });
+        },
+
+        _selectSettingsKey: function _selectSettingsKey (settingsKey) {
+            this.settingsKey = settingsKey;
+            this.total = 0;
+            this._clearPages();
+            this.$viewport.scrollTop(0);
+            this.$key.val(settingsKey);
+            if (settingsKey === null) {
+                this._setTotal(0);
+                return;
+            }
+            // The first page tells the total, the rows are rendered once it's fetched.
+            this._fetchPage(0);
+        },
+
+        _setTotal: function _setTotal (total) {
+            this.total = total;
+            this.$total.text(total + ' settings');
+            this.$spacer.height(total * ROW_HEIGHT);
+            this._scheduleRender();
+        },
+
+        _clearPages: function _clearPages () {
+            this.pages = {};
+            this.pageOrder = [];
+        },
+
+        /**
+         * Returns the cached page of the settings, or undefined if it's not fetched yet, in which
+         * case it's fetched and the rows rendered again once it's fetched.
+         */
+        _getPage: function _getPage (pageIndex) {
+            var page = this.pages[pageIndex];
+            if (page === undefined) {
+                this._fetchPage(pageIndex);
+                return undefined;
+            }
+            // The most recently used last.
+            this.pageOrder.splice($.inArray(pageIndex, this.pageOrder), 1);
+            this.pageOrder.push(pageIndex);
+            return page.settings;
+        },
+
+        _fetchPage: function _fetchPage (pageIndex) {
+            var instance = this;
+            var settingsKey = this.settingsKey;
+            var page = this.pages[pageIndex] = { settings: undefined };
+            this.pageOrder.push(pageIndex);
+            while (this.pageOrder.length > MAX_CACHED_PAGES) {
+                delete this.pages[this.pageOrder.shift()];
+            }
+
+            $.getJSON(restUrl('/keys/' + encodeURIComponent(settingsKey)), {
+                offset: pageIndex * PAGE_SIZE,
+                limit: PAGE_SIZE
+            }).done(function (data) {
+                // Dropped meanwhile, as another settings key is selected or the settings changed.
+                if (instance.settingsKey !== settingsKey || instance.pages[pageIndex] !== page) {
+                    return;
+                }
+                page.settings = data.settings;
+                if (data.total !== instance.total) {
+                    instance._setTotal(data.total);
+                } else {
+                    instance._scheduleRender();
+                }
+            }).fail(function () {
+                if (instance.pages[pageIndex] === page) {
+                    delete instance.pages[pageIndex];
+                    instance.pageOrder.splice($.inArray(pageIndex, instance.pageOrder), 1);
+                }
+            });
+        },
+
+        _scheduleRender: function _scheduleRender () {
+            if (this.renderPending) {
+                return;
+            }
+            this.renderPending = true;
+            var instance = this;
+            window.requestAnimationFrame(function () {
+                instance.renderPending = false;
+                instance._render();
+            });
+        },
+
+        /**
+         * Renders only the rows in view, along with a few above and below them, fetching the pages
+         * they're on as needed.
+         */
+        _render: function _render () {
+            var scrollTop = this.$viewport.scrollTop();
+            var height = this.$viewport.height();
+            var first = Math.max(0, Math.floor(scrollTop / ROW_HEIGHT) - OVERSCAN);
+            var last = Math.min(this.total, Math.ceil((scrollTop + height) / ROW_HEIGHT) + OVERSCAN);
+
+            var rows = [];
+            var pageIndex = -1;
+            var page;
+            for (var index = first; index < last; index++) {
+                if (Math.floor(index / PAGE_SIZE) !== pageIndex) {
+                    pageIndex = Math.floor(index / PAGE_SIZE);
+                    page = this._getPage(pageIndex);
+                }
+                rows.push(this._renderRow(index, page ? page[index % PAGE_SIZE] : undefined));
+            }
+
+            this.$rows.parent().css('transform', 'translateY(' + first * ROW_HEIGHT + 'px)');
+            this.$rows.empty().append(rows);
+        },
+
+        _renderRow: function _renderRow (index, settings) {
+            var $row = $('<tr/>');
+            if (settings === undefined) {
+                return $row.addClass('settings-viewer-loading')
+                    .append($('<td class="settings-viewer-id"/>').text(index))
+                    .append($('<td/>').text('Loading...'));
+            }
+            var settingsId = settings.settingsId !== undefined ? settings.settingsId : index;
+            var json = JSON.stringify(settings);
+            return $row
+                .append($('<td class="settings-viewer-id"/>').text(settingsId).attr('title', settingsId))
+                .append($('<td/>').text(json).attr('title', json));
+        },
+
+        /**
+         * Follows the changes of the settings while the dialog is shown, dropping the fetched pages
+         * of the changed settings key, see GET /settings/changes. The changes not newer than the
+         * last one seen are skipped, e.g. as they're sent again after the stream reconnects, so that
+         * the pages are not fetched again for changes they already show.
+         */
+        _followChanges: function _followChanges () {
+            if (this.changes || !window.EventSource) {
+                return;
+            }
+            var instance = this;
+            this.changes = new EventSource(restUrl('/changes'));
+            this.changes.addEventListener('ready', function (e) {
+                instance.changeVersion = JSON.parse(e.data).version;
+            });
+            this.changes.addEventListener('change', function (e) {
+                var change = JSON.parse(e.data);
+                if (change.version <= instance.changeVersion) {
+                    return;
+                }
+                instance.changeVersion = change.version;
+                if ($.inArray(change.settingsKey, instance.settingsKeys) < 0) {
+                    instance._loadManifest(); // A settings key added.
+                }
+                if (change.settingsKey === instance.settingsKey) {
+                    instance._clearPages();
+                    instance._fetchPage(Math.floor(instance.$viewport.scrollTop() / ROW_HEIGHT / PAGE_SIZE));
+                }
+            });
+            this.changes.addEventListener('reset', function (e) {
+                // Of another change feed, the versions of which are not comparable to the last one.
+                instance.changeVersion = JSON.parse(e.data).version;
+                instance._loadManifest();
+                if (instance.settingsKey !== null) {
+                    instance._clearPages();
+                    instance._fetchPage(0);
+                }
+            });
+        },
+
+        _stopFollowingChanges: function _stopFollowingChanges () {
+            if (this.changes) {
+                this.changes.close();
+                this.changes = null;
+            }
+        },
+
     });
 
     Events.bind(Types.NEW_CONTENT_ADDED, function (e, context, reason) {
@@ -41,4 +281,4 @@ define('echeveria/settings/viewer', [
         }
     });
 
-});
\ No newline at end of file
+});
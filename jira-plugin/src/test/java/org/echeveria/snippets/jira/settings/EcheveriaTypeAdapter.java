@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.io.IOException;
+
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A hand-written type adapter of {@link Echeveria}, which reads and writes the same JSON as Gson
+ * does reflectively.
+ */
+public class EcheveriaTypeAdapter extends TypeAdapter<Echeveria> {
+
+  @Override
+  public void write(JsonWriter out, Echeveria echeveria) throws IOException {
+    if (echeveria == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    writeString(out, "genus", echeveria.genus);
+    writeString(out, "species", echeveria.species);
+    writeString(out, "author", echeveria.author);
+    writeString(out, "synonym", echeveria.synonym);
+    writeString(out, "settingsKey", echeveria.getSettingsKey());
+    out.name("settingsId").value(echeveria.getSettingsId());
+    out.endObject();
+  }
+
+  private static void writeString(JsonWriter out, String name, String value) throws IOException {
+    if (value != null) {
+      out.name(name).value(value);
+    }
+  }
+
+  @Override
+  public Echeveria read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    Echeveria echeveria = new Echeveria(-1);
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (name) {
+        case "genus":
+          echeveria.genus = in.nextString();
+          break;
+        case "species":
+          echeveria.species = in.nextString();
+          break;
+        case "author":
+          echeveria.author = in.nextString();
+          break;
+        case "synonym":
+          echeveria.synonym = in.nextString();
+          break;
+        case "settingsId":
+          echeveria.setSettingsId(in.nextInt());
+          break;
+        default:
+          in.skipValue(); // The settings key is always the one of Echeveria.
+      }
+    }
+    in.endObject();
+    return echeveria;
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An in-memory plugin settings that hands out and keeps copies of the values, the way the plugin
+ * settings backed by a database do, and counts the reads and writes.
+ */
+public class MemoryPluginSettings implements PluginSettings {
+
+  private final ConcurrentMap<String, Object> settingsMap = Maps.newConcurrentMap();
+  private final AtomicLong reads = new AtomicLong();
+  private final AtomicLong writes = new AtomicLong();
+
+  @Override
+  public Object get(String key) {
+    reads.incrementAndGet();
+    return copyOf(settingsMap.get(key));
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    writes.incrementAndGet();
+    return settingsMap.put(key, copyOf(value));
+  }
+
+  @Override
+  public Object remove(String key) {
+    writes.incrementAndGet();
+    return settingsMap.remove(key);
+  }
+
+  public long getReads() {
+    return reads.get();
+  }
+
+  public long getWrites() {
+    return writes.get();
+  }
+
+  public void resetCounts() {
+    reads.set(0);
+    writes.set(0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object copyOf(Object value) {
+    if (value instanceof List) {
+      return Lists.newArrayList((List<String>) value);
+    }
+    if (value instanceof Map) {
+      return Maps.newHashMap((Map<String, String>) value);
+    }
+    return value;
+  }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.echeveria.snippets.jira.settings;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+
+/**
+ * A rough benchmark of the settings manager over an in-memory plugin settings, it's not a unit
+ * test and is to be run by hand, e.g. from the IDE.
+ */
+public class SettingsManagerBenchmark {
+
+  private static final int[] LIST_SIZES = {10, 100, 1_000, 10_000, 100_000};
+  private static final int WARM_UP_ITERATIONS = 200;
+  private static final int ITERATIONS = 200;
+
+  private static final String SETTINGS_KEY = "echeveria";
+
+  public static void main(String[] args) {
+    benchmarkSaveSettings(0);
+    benchmarkSaveSettings(1_000);
+    benchmarkCodecs();
+    benchmarkTypeAdapters();
+    benchmarkConcurrentSaves();
+    benchmarkWriteBehind();
+    benchmarkCompression();
+  }
+
+  /**
+   * Storage size and cold read latency of 100 settings carrying large texts, stored as they are and
+   * compressed.
+   */
+  static void benchmarkCompression() {
+    int settingsCount = 100;
+    System.out.println("compression, " + settingsCount + " settings (KB stored, us/read of all)");
+    System.out.printf("%10s %12s %12s %12s %12s%n", "text size", "plain KB", "deflate KB", "plain", "deflate");
+    for (int textSize : new int[] {100, 1_000, 10_000, 100_000}) {
+      long[] sizes = new long[2];
+      double[] latencies = new double[2];
+      for (int i = 0; i < latencies.length; i++) {
+        MemoryPluginSettings pluginSettings = new MemoryPluginSettings();
+        SettingsManager settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+        settingsManager.setCompressionThreshold(i == 0 ? 0 : 1_000);
+        Random random = new Random(textSize); // The same texts either way
+        List<Echeveria> echeverias = Lists.newArrayList();
+        for (int settingsId = 0; settingsId < settingsCount; settingsId++) {
+          Echeveria echeveria = SettingsSample.echeveria_derenbergii();
+          echeveria.setSynonym(newText(random, textSize));
+          echeverias.add(echeveria);
+        }
+        settingsManager.saveAllSettings(echeverias);
+        List<?> settingsList = (List<?>) pluginSettings.get(MyPluginComponent.PLUGIN_KEY + ":" + SETTINGS_KEY);
+        sizes[i] = settingsList.stream().mapToLong(settings -> ((String) settings).length()).sum();
+
+        int iterations = Math.max(10, ITERATIONS * 1_000 / textSize);
+        for (int iteration = 0; iteration < iterations; iteration++) {
+          new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY).getAllSettings(SETTINGS_KEY, Echeveria.class);
+        }
+        long start = System.nanoTime();
+        for (int iteration = 0; iteration < iterations; iteration++) {
+          new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY).getAllSettings(SETTINGS_KEY, Echeveria.class);
+        }
+        latencies[i] = (System.nanoTime() - start) / 1000.0 / iterations;
+      }
+      System.out.printf("%10d %12d %12d %12.1f %12.1f%n", textSize, sizes[0] / 1024, sizes[1] / 1024,
+          latencies[0], latencies[1]);
+    }
+  }
+
+  /**
+   * A text of words picked at random out of a small vocabulary, which compresses about as well as
+   * prose rather than as well as a repeated string.
+   */
+  private static String newText(Random random, int textSize) {
+    String[] words = {"rosette", "leaves", "glaucous", "farina", "offsets", "Mexico", "flowers", "pink",
+        "orange", "stem", "succulent", "crassulaceae", "pruinose", "margin", "apex", "red", "acuminate"};
+    StringBuilder text = new StringBuilder(textSize + 16);
+    while (text.length() < textSize) {
+      text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? ". " : " ");
+    }
+    return text.substring(0, textSize);
+  }
+
+  /**
+   * Update latency written through and written behind, with the changes flushed every 1,000.
+   */
+  static void benchmarkWriteBehind() {
+    System.out.println("saveSettings written behind (us/op)");
+    System.out.printf("%10s %12s %12s%n", "list size", "through", "behind");
+    for (int listSize : LIST_SIZES) {
+      double[] latencies = new double[2];
+      for (int i = 0; i < latencies.length; i++) {
+        SettingsManager settingsManager = newSettingsManager(listSize);
+        if (i == 1) {
+          settingsManager.setWriteBehind(1, TimeUnit.MINUTES, 1_000);
+        }
+        for (int iteration = 0; iteration < WARM_UP_ITERATIONS; iteration++) {
+          update(settingsManager, listSize);
+        }
+        long start = System.nanoTime();
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+          update(settingsManager, listSize);
+        }
+        settingsManager.stopWriteBehind(); // The last flush is part of the cost.
+        latencies[i] = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+      }
+      System.out.printf("%10d %12.1f %12.1f%n", listSize, latencies[0], latencies[1]);
+    }
+  }
+
+  /**
+   * Save throughput against the number of threads saving at once, all to the same settings key or
+   * each to its own settings key.
+   */
+  static void benchmarkConcurrentSaves() {
+    System.out.println("concurrent saveSettings (ops/ms), page size 100");
+    System.out.printf("%10s %12s %12s %12s%n", "threads", "shared", "optimistic", "own key");
+    for (int threads : new int[] {1, 2, 4, 8, 16, 32}) {
+      runConcurrentSaves(threads, false, false); // Warm-up
+      System.out.printf("%10d %12.1f %12.1f %12.1f%n", threads,
+          runConcurrentSaves(threads, false, false),
+          runConcurrentSaves(threads, true, false),
+          runConcurrentSaves(threads, false, true));
+    }
+  }
+
+  private static double runConcurrentSaves(int threads, boolean optimisticLocking, boolean ownKey) {
+    SettingsManager settingsManager = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+    settingsManager.setPageSize(100);
+    settingsManager.setOptimisticLocking(optimisticLocking);
+
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = Lists.newArrayList();
+    for (int thread = 0; thread < threads; thread++) {
+      String settingsKey = ownKey ? "settings-" + thread : "settings";
+      futures.add(executorService.submit(() -> {
+        start.await();
+        for (int i = 0; i < ITERATIONS; i++) {
+          settingsManager.saveSettings(Settings.Sequenced.create(settingsKey));
+        }
+        return null;
+      }));
+    }
+    long startTime = System.nanoTime();
+    start.countDown();
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      executorService.shutdown();
+    }
+    return threads * ITERATIONS / ((System.nanoTime() - startTime) / 1_000_000.0);
+  }
+
+  /**
+   * Parse latency of each entry of a list of Echeveria, with Gson resolving the type adapter on
+   * every call, with the type adapter kept by the codec, and with a hand-written type adapter.
+   */
+  static void benchmarkTypeAdapters() {
+    Gson gson = new Gson();
+    List<String> settingsList = Lists.newArrayList();
+    for (int settingsId = 0; settingsId < 1_000; settingsId++) {
+      Echeveria echeveria = SettingsSample.echeveria_derenbergii();
+      echeveria.setSettingsId(settingsId);
+      settingsList.add(gson.toJson(echeveria));
+    }
+    GsonSettingsCodec handWrittenCodec = new GsonSettingsCodec();
+    handWrittenCodec.registerTypeAdapter(Echeveria.class, new EcheveriaTypeAdapter());
+
+    System.out.println("parse Echeveria (us/entry)");
+    System.out.printf("%12s %12s %12s%n", "fromJson", "cached", "hand-written");
+    SettingsCodec fromJson = new SettingsCodec() {
+      @Override
+      public String getMarker() {
+        return "";
+      }
+
+      @Override
+      public String encode(Object settings) {
+        return gson.toJson(settings);
+      }
+
+      @Override
+      public <T> T decode(String encodedSettings, Class<T> classOfT) {
+        return gson.fromJson(encodedSettings, classOfT);
+      }
+    };
+    double[] latencies = new double[3];
+    SettingsCodec[] codecs = {fromJson, new GsonSettingsCodec(), handWrittenCodec};
+    for (int round = 0; round < 5; round++) { // The rounds but the last are the warm-up.
+      for (int i = 0; i < codecs.length; i++) {
+        long start = System.nanoTime();
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+          for (String settingsJson : settingsList) {
+            codecs[i].decode(settingsJson, Echeveria.class);
+          }
+        }
+        latencies[i] = (System.nanoTime() - start) / 1000.0 / ITERATIONS / settingsList.size();
+      }
+    }
+    System.out.printf("%12.2f %12.2f %12.2f%n", latencies[0], latencies[1], latencies[2]);
+  }
+
+  /**
+   * Encode and decode latency and the encoded size of each codec over the sample settings.
+   */
+  static void benchmarkCodecs() {
+    List<Settings.Sequenced> samples = Lists.newArrayList(
+        SettingsSample.echeveria_colorata(), SettingsSample.echeveria_derenbergii(),
+        SettingsSample.echeveria_elegans(), SettingsSample.echeveria_hyalina(),
+        SettingsSample.graptopetalum_amethystinum(), SettingsSample.graptopetalum_macdougallii(),
+        SettingsSample.pachyphytum_oviferum());
+    int codecIterations = ITERATIONS * 100;
+
+    System.out.println("codecs (us/op)");
+    System.out.printf("%10s %12s %12s %12s%n", "codec", "encode", "decode", "bytes");
+    for (SettingsCodec codec : new SettingsCodec[] {new GsonSettingsCodec(), new BinarySettingsCodec()}) {
+      List<String> encodedSamples = Lists.newArrayList();
+      int bytes = 0;
+      for (Settings.Sequenced sample : samples) {
+        String encodedSettings = codec.encode(sample);
+        encodedSamples.add(encodedSettings);
+        bytes += encodedSettings.length();
+      }
+
+      for (int i = 0; i < codecIterations; i++) {
+        Settings.Sequenced sample = samples.get(i % samples.size());
+        codec.decode(codec.encode(sample), sample.getClass());
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < codecIterations; i++) {
+        codec.encode(samples.get(i % samples.size()));
+      }
+      double encode = (System.nanoTime() - start) / 1000.0 / codecIterations;
+
+      start = System.nanoTime();
+      for (int i = 0; i < codecIterations; i++) {
+        int index = i % samples.size();
+        codec.decode(encodedSamples.get(index), samples.get(index).getClass());
+      }
+      double decode = (System.nanoTime() - start) / 1000.0 / codecIterations;
+
+      System.out.printf("%10s %12.2f %12.2f %12d%n", codec.getClass().getSimpleName().replace("SettingsCodec", ""),
+          encode, decode, bytes / samples.size());
+    }
+  }
+
+  /**
+   * Save latency against the number of the settings that share the settings key.
+   */
+  static void benchmarkSaveSettings(int pageSize) {
+    System.out.println("saveSettings (us/op), page size " + pageSize);
+    System.out.printf("%10s %12s %12s%n", "list size", "update", "append");
+    for (int listSize : LIST_SIZES) {
+      SettingsManager settingsManager = newSettingsManager(listSize);
+      settingsManager.setPageSize(pageSize);
+
+      for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+        update(settingsManager, listSize);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        update(settingsManager, listSize);
+      }
+      double update = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+
+      start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        settingsManager.saveSettings(SettingsSample.echeveria_hyalina());
+      }
+      double append = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+
+      System.out.printf("%10d %12.1f %12.1f%n", listSize, update, append);
+    }
+  }
+
+  private static void update(SettingsManager settingsManager, int listSize) {
+    Echeveria echeveria = settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, listSize / 2);
+    echeveria.setSynonym(echeveria.hasSynonym() ? null : "Echeveria lindsayana E.Walther");
+    settingsManager.saveSettings(echeveria);
+  }
+
+  /**
+   * Creates a settings manager of which the settings key already has the specified number of
+   * settings, written straight into the plugin settings.
+   */
+  static SettingsManager newSettingsManager(int listSize) {
+    MemoryPluginSettings pluginSettings = new MemoryPluginSettings();
+    SettingsManager settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata()); // Into the manifest
+
+    Gson gson = new Gson();
+    List<String> settingsList = Lists.newArrayListWithCapacity(listSize);
+    for (int settingsId = 0; settingsId < listSize; settingsId++) {
+      Echeveria echeveria = SettingsSample.echeveria_derenbergii();
+      echeveria.setSettingsId(settingsId);
+      settingsList.add(gson.toJson(echeveria));
+    }
+    pluginSettings.put(MyPluginComponent.PLUGIN_KEY + ":" + SETTINGS_KEY, settingsList);
+
+    return settingsManager;
+  }
+
+}
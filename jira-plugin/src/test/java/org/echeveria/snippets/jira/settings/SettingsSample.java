@@ -91,6 +91,18 @@ public final class SettingsSample {
         .build();
   }
 
+  public static Cultivar cultivar_perle_von_nurnberg() {
+    return new Cultivar("Perle von Nurnberg", "Echeveria gibbiflora x Echeveria potosina");
+  }
+
+  public static Cultivar cultivar_lola() {
+    return new Cultivar("Lola", "Echeveria lilacina x Echeveria derenbergii");
+  }
+
+  public static Cultivar cultivar_black_prince() {
+    return new Cultivar("Black Prince", "Echeveria shaviana x Echeveria affinis");
+  }
+
   public static abstract class Plant extends Settings.Sequenced {
 
     protected String synonym;
@@ -116,7 +128,9 @@ public final class SettingsSample {
   public static abstract class Crassulaceae extends Plant {
 
     protected String genus;
+    @Indexed
     protected String species;
+    @Indexed
     protected String author;
 
     Crassulaceae(String settingsKey, int settingsId) {
@@ -220,4 +234,30 @@ public final class SettingsSample {
 
   }
 
+  public static class Cultivar extends Settings.Keyed {
+
+    @Indexed
+    private String name;
+    private String parentage;
+
+    Cultivar(String name, String parentage) {
+      super("cultivar", null);
+      this.name = name;
+      this.parentage = parentage;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getParentage() {
+      return parentage;
+    }
+
+  }
+
 }
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.BinarySettingsCodec;
+import org.echeveria.snippets.jira.settings.EcheveriaTypeAdapter;
+import org.echeveria.snippets.jira.settings.GsonSettingsCodec;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsCodec;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+public class SettingsCodecTest {
+
+  private static final String SETTINGS_KEY = "echeveria";
+  private static final String STORAGE_KEY = MyPluginComponent.PLUGIN_KEY + ":" + SETTINGS_KEY;
+
+  @Test
+  public void testBinaryRoundTrip() {
+    SettingsCodec codec = new BinarySettingsCodec();
+    Echeveria echeveria = SettingsSample.echeveria_elegans();
+
+    String encodedSettings = codec.encode(echeveria);
+    assertThat(encodedSettings.startsWith(BinarySettingsCodec.MARKER), is(true));
+
+    Echeveria decoded = codec.decode(encodedSettings, Echeveria.class);
+    assertThat(decoded.getSettingsKey(), is(echeveria.getSettingsKey()));
+    assertThat(decoded.getSettingsId(), is(echeveria.getSettingsId()));
+    assertThat(decoded.getGenus(), is(echeveria.getGenus()));
+    assertThat(decoded.getSpecies(), is(echeveria.getSpecies()));
+    assertThat(decoded.getAuthor(), is(echeveria.getAuthor()));
+    assertThat(decoded.getSynonym(), is(echeveria.getSynonym()));
+  }
+
+  @Test
+  public void testBinaryDecodesIntoJsonTree() {
+    SettingsCodec codec = new BinarySettingsCodec();
+    Echeveria echeveria = SettingsSample.echeveria_hyalina();
+    echeveria.setSynonym("Echeveria lindsayana E.Walther");
+
+    JsonObject tree = codec.decode(codec.encode(echeveria), JsonElement.class).getAsJsonObject();
+    assertThat(tree.get("settingsKey").getAsString(), is(echeveria.getSettingsKey()));
+    assertThat(tree.get("species").getAsString(), is(echeveria.getSpecies()));
+    assertThat(tree, is(new GsonSettingsCodec().decode(new GsonSettingsCodec().encode(echeveria),
+        JsonElement.class)));
+  }
+
+  @Test
+  public void testSettingsOfDifferentCodecsAreDecoded() {
+    MemoryPluginSettings pluginSettings = new MemoryPluginSettings();
+    SettingsManager settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    settingsManager.setSettingsCodec(new BinarySettingsCodec());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    List<?> settingsList = (List<?>) pluginSettings.get(STORAGE_KEY);
+    assertThat(((String) settingsList.get(0)).startsWith("{"), is(true));
+    assertThat(((String) settingsList.get(1)).startsWith(BinarySettingsCodec.MARKER), is(true));
+
+    SettingsManager otherSettingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    List<Echeveria> echeverias = otherSettingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class);
+    assertThat(echeverias.get(0).getSpecies(), is(SettingsSample.echeveria_colorata().getSpecies()));
+    assertThat(echeverias.get(1).getSpecies(), is(SettingsSample.echeveria_derenbergii().getSpecies()));
+    assertThat(echeverias.get(1).getSettingsId(), is(1));
+  }
+
+  @Test
+  public void testLargeSettingsAreCompressed() {
+    MemoryPluginSettings pluginSettings = new MemoryPluginSettings();
+    SettingsManager settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    settingsManager.setCompressionThreshold(1_000);
+    Echeveria echeveria = SettingsSample.echeveria_colorata();
+    String synonym = Strings.repeat("Echeveria lindsayana E.Walther, ", 100);
+    echeveria.setSynonym(synonym);
+    settingsManager.saveSettings(echeveria);
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    List<?> settingsList = (List<?>) pluginSettings.get(STORAGE_KEY);
+    assertThat(((String) settingsList.get(0)).startsWith("~z1:"), is(true));
+    assertThat(((String) settingsList.get(0)).length() < synonym.length(), is(true));
+    assertThat(((String) settingsList.get(1)).startsWith("{"), is(true));
+
+    SettingsManager otherSettingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    List<Echeveria> echeverias = otherSettingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class);
+    assertThat(echeverias.get(0).getSynonym(), is(synonym));
+    assertThat(echeverias.get(1).getSpecies(), is(SettingsSample.echeveria_derenbergii().getSpecies()));
+  }
+
+  @Test
+  public void testCompressedSettingsOfAnyCodecAreDecoded() {
+    MemoryPluginSettings pluginSettings = new MemoryPluginSettings();
+    SettingsManager settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    settingsManager.setSettingsCodec(new BinarySettingsCodec());
+    settingsManager.setCompressionThreshold(1_000);
+    Echeveria echeveria = SettingsSample.echeveria_elegans();
+    echeveria.setSynonym(Strings.repeat("Echeveria potosina E.Walther, ", 100));
+    settingsManager.saveSettings(echeveria);
+
+    settingsManager.setCompressionThreshold(0);
+    settingsManager.saveSettings(SettingsSample.echeveria_hyalina());
+
+    List<Echeveria> echeverias = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY)
+        .getAllSettings(SETTINGS_KEY, Echeveria.class);
+    assertThat(echeverias.get(0).getSynonym(), is(echeveria.getSynonym()));
+    assertThat(echeverias.get(1).getSpecies(), is(SettingsSample.echeveria_hyalina().getSpecies()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCompressedSettingsOfCorruptedLengthAreNotDecoded() {
+    MemoryPluginSettings pluginSettings = new MemoryPluginSettings();
+    byte[] input = ByteBuffer.allocate(Integer.BYTES + 8).putInt(Integer.MAX_VALUE).array();
+    pluginSettings.put(STORAGE_KEY, Lists.newArrayList("~z1:" + Base64.getEncoder().encodeToString(input)));
+
+    new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY).getAllSettings(SETTINGS_KEY, Echeveria.class);
+  }
+
+  @Test
+  public void testHandWrittenTypeAdapterReadsWhatGsonWrites() {
+    Echeveria echeveria = SettingsSample.echeveria_derenbergii();
+    echeveria.setSynonym("Echeveria lindsayana E.Walther");
+    GsonSettingsCodec reflectiveCodec = new GsonSettingsCodec();
+    GsonSettingsCodec handWrittenCodec = new GsonSettingsCodec();
+    handWrittenCodec.registerTypeAdapter(Echeveria.class, new EcheveriaTypeAdapter());
+
+    String json = reflectiveCodec.encode(echeveria);
+    Echeveria decoded = handWrittenCodec.decode(json, Echeveria.class);
+    assertThat(decoded.toString(), is(echeveria.toString()));
+    assertThat(decoded.getSynonym(), is(echeveria.getSynonym()));
+    assertThat(decoded.getSettingsKey(), is(echeveria.getSettingsKey()));
+    assertThat(decoded.getSettingsId(), is(echeveria.getSettingsId()));
+    assertThat(handWrittenCodec.encode(decoded), is(json));
+  }
+
+  @Test
+  public void testRegisteredTypeAdapterIsUsedForReadsAndWrites() {
+    AtomicInteger reads = new AtomicInteger();
+    AtomicInteger writes = new AtomicInteger();
+    SettingsManager settingsManager = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+    settingsManager.registerTypeAdapter(Echeveria.class, new EcheveriaTypeAdapter() {
+      @Override
+      public void write(JsonWriter out, Echeveria echeveria) throws IOException {
+        writes.incrementAndGet();
+        super.write(out, echeveria);
+      }
+
+      @Override
+      public Echeveria read(JsonReader in) throws IOException {
+        reads.incrementAndGet();
+        return super.read(in);
+      }
+    });
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+    List<Echeveria> echeverias = settingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class);
+
+    assertThat(writes.get(), is(2));
+    assertThat(reads.get(), is(2));
+    assertThat(echeverias.get(1).getSpecies(), is(SettingsSample.echeveria_elegans().getSpecies()));
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SettingsManagerAsyncTest {
+
+  private static final String SETTINGS_KEY = "echeveria";
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    settingsManager = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+  }
+
+  @Test
+  public void testWritesOfTheSameKeyKeepTheirOrder() throws Exception {
+    List<CompletableFuture<Integer>> futures = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_colorata();
+      echeveria.setSynonym("synonym " + i);
+      futures.add(settingsManager.saveSettingsAsync(echeveria));
+    }
+    CompletableFuture<List<Echeveria>> echeverias = settingsManager.getAllSettingsAsync(SETTINGS_KEY, Echeveria.class);
+
+    for (int i = 0; i < futures.size(); i++) {
+      assertThat(futures.get(i).get(10, TimeUnit.SECONDS), is(i + 1));
+    }
+    // The read runs after the writes called before it.
+    List<String> synonyms = echeverias.get(10, TimeUnit.SECONDS).stream()
+        .map(Echeveria::getSynonym)
+        .collect(Collectors.toList());
+    assertThat(synonyms.size(), is(100));
+    for (int i = 0; i < synonyms.size(); i++) {
+      assertThat(synonyms.get(i), is("synonym " + i));
+    }
+  }
+
+  @Test
+  public void testReadsOfManyKeysAtOnce() throws Exception {
+    settingsManager.saveAllSettings(Lists.newArrayList(
+        SettingsSample.echeveria_colorata(),
+        SettingsSample.graptopetalum_amethystinum(),
+        SettingsSample.pachyphytum_oviferum()));
+
+    List<CompletableFuture<List<Object>>> futures = settingsManager.getManifest().stream()
+        .map(settingsKey -> settingsManager.getAllSettingsAsync(settingsKey, Object.class))
+        .collect(Collectors.toList());
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+    for (CompletableFuture<List<Object>> future : futures) {
+      assertThat(future.get().size(), is(1));
+    }
+  }
+
+  @Test
+  public void testFailedWriteDoesNotHoldUpTheNextOnes() throws Exception {
+    CompletableFuture<Integer> removed = settingsManager.removeSettingsAsync(SettingsSample.cultivar_lola());
+    CompletableFuture<Integer> saved = settingsManager.saveSettingsAsync(SettingsSample.cultivar_black_prince());
+
+    try {
+      removed.get(10, TimeUnit.SECONDS);
+      fail("The settings to be removed do not exist.");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+    }
+    assertThat(saved.get(10, TimeUnit.SECONDS), is(1));
+  }
+
+  @Test
+  public void testShutdownRejectsLaterOperations() throws Exception {
+    CompletableFuture<Integer> saved = settingsManager.saveSettingsAsync(SettingsSample.echeveria_colorata());
+
+    settingsManager.shutdown();
+    CompletableFuture<Integer> rejected = settingsManager.saveSettingsAsync(SettingsSample.echeveria_elegans());
+
+    assertThat(saved.get(10, TimeUnit.SECONDS), is(1));
+    try {
+      rejected.get(10, TimeUnit.SECONDS);
+      fail("The settings manager has been shut down.");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+    }
+  }
+
+  @Test
+  public void testBatchCommitAsync() throws Exception {
+    CompletableFuture<Void> committed = settingsManager.batch()
+        .save(SettingsSample.echeveria_colorata())
+        .save(SettingsSample.graptopetalum_amethystinum())
+        .commitAsync();
+    CompletableFuture<Echeveria> echeveria = settingsManager.getSettingsAsync(SETTINGS_KEY, Echeveria.class, 0);
+
+    committed.get(10, TimeUnit.SECONDS);
+    assertThat(echeveria.get(10, TimeUnit.SECONDS).getSpecies(), is("colorata"));
+    assertThat(settingsManager.hasSettings("graptopetalum"), is(true));
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsChange;
+import org.echeveria.snippets.jira.settings.SettingsChangedEvent;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Cultivar;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsManagerChangeFeedTest {
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    settingsManager = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+  }
+
+  @Test
+  public void testChangesArePublishedAsCommitted() throws InterruptedException {
+    long version = settingsManager.getLastChangeVersion();
+    Cultivar lola = SettingsSample.cultivar_lola();
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(lola);
+
+    List<SettingsChange> changes = settingsManager.awaitChanges(version, 0, TimeUnit.SECONDS);
+    assertThat(changes.size(), is(2));
+    assertThat(changes.get(0).getSettingsKey(), is("echeveria"));
+    assertThat(changes.get(0).getSettingsId(), is(nullValue()));
+    assertThat(changes.get(0).getVersion(), is(version + 1));
+    assertThat(changes.get(1).getSettingsKey(), is("cultivar"));
+    assertThat(changes.get(1).getSettingsId(), is(lola.getSettingsId()));
+    assertThat(settingsManager.getLastChangeVersion(), is(version + 2));
+  }
+
+  @Test
+  public void testAwaitChangesWaitsForTheNextChange() throws Exception {
+    long version = settingsManager.getLastChangeVersion();
+
+    CompletableFuture<List<SettingsChange>> changes = CompletableFuture.supplyAsync(() -> {
+      try {
+        return settingsManager.awaitChanges(version, 10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    Thread.sleep(100);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    assertThat(changes.get(10, TimeUnit.SECONDS).get(0).getSettingsKey(), is("echeveria"));
+  }
+
+  @Test
+  public void testAwaitChangesTimesOutWithoutChanges() throws InterruptedException {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    long version = settingsManager.getLastChangeVersion();
+
+    assertThat(settingsManager.awaitChanges(version, 10, TimeUnit.MILLISECONDS), is(empty()));
+  }
+
+  @Test
+  public void testChangesNoLongerKeptAreNotReturned() throws InterruptedException {
+    long version = settingsManager.getLastChangeVersion();
+    for (int i = 0; i < 1_100; i++) {
+      settingsManager.saveSettings(SettingsSample.cultivar_lola());
+    }
+
+    assertThat(settingsManager.awaitChanges(version, 0, TimeUnit.SECONDS), is(nullValue()));
+    assertThat(settingsManager.awaitChanges(version + 100, 0, TimeUnit.SECONDS).size(), is(1_000));
+    // Nor the changes of another change feed.
+    assertThat(settingsManager.awaitChanges(version + 2_000, 0, TimeUnit.SECONDS), is(nullValue()));
+  }
+
+  @Test
+  public void testChangesElsewhereArePublished() throws InterruptedException {
+    SettingsManager otherSettingsManager =
+        new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+    long version = settingsManager.getLastChangeVersion();
+
+    settingsManager.onSettingsChanged(
+        new SettingsChangedEvent(otherSettingsManager, MyPluginComponent.PLUGIN_KEY, "graptopetalum"));
+
+    List<SettingsChange> changes = settingsManager.awaitChanges(version, 0, TimeUnit.SECONDS);
+    assertThat(changes.size(), is(1));
+    assertThat(changes.get(0).getSettingsKey(), is("graptopetalum"));
+    assertThat(changes.get(0).getSettingsId(), is(nullValue()));
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsClusterChannel;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Simulates the nodes of a cluster with settings managers over the same plugin settings, which
+ * don't hear of each other's changes through the event publisher.
+ */
+public class SettingsManagerClusterTest {
+
+  private static final String SETTINGS_KEY = "echeveria";
+
+  private MemoryPluginSettings pluginSettings;
+
+  private SettingsManager node1;
+
+  private SettingsManager node2;
+
+  @Before
+  public void setup() {
+    pluginSettings = new MemoryPluginSettings();
+    node1 = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    node2 = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+  }
+
+  private static void updateSynonym(SettingsManager node, String synonym) {
+    Echeveria echeveria = node.getSettings(SETTINGS_KEY, Echeveria.class);
+    echeveria.setSynonym(synonym);
+    node.saveSettings(echeveria);
+  }
+
+  private static String readSynonym(SettingsManager node) {
+    return node.getSettings(SETTINGS_KEY, Echeveria.class).getSynonym();
+  }
+
+  @Test
+  public void testChangesOnAnotherNodeAreNotSeenWithoutVersionCheck() {
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+    readSynonym(node2);
+
+    updateSynonym(node1, "Echeveria lindsayana E.Walther");
+
+    assertThat(readSynonym(node2), is((String) null)); // Still cached
+  }
+
+  @Test
+  public void testChangesOnAnotherNodeAreSeenWithVersionCheck() {
+    node1.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node2.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+    readSynonym(node2);
+
+    updateSynonym(node1, "Echeveria lindsayana E.Walther");
+
+    assertThat(readSynonym(node2), is("Echeveria lindsayana E.Walther"));
+    assertThat(node2.getMetrics().getStaleSettings(), is(1L));
+
+    // Unchanged, only the version stamp is read again.
+    pluginSettings.resetCounts();
+    readSynonym(node2);
+    assertThat(pluginSettings.getReads(), is(1L));
+  }
+
+  @Test
+  public void testTagsStayTheSameWithoutChanges() {
+    node1.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node2.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+    long lastChangeVersion = node2.getLastChangeVersion();
+
+    // The settings are not read through the cache of the node, nor changed.
+    String settingsTag = node2.getSettingsTag(SETTINGS_KEY);
+    String manifestTag = node2.getManifestTag();
+
+    assertThat(node2.getSettingsTag(SETTINGS_KEY), is(settingsTag));
+    assertThat(node2.getSettingsTag(SETTINGS_KEY), is(settingsTag));
+    assertThat(node2.getManifestTag(), is(manifestTag));
+    assertThat(node2.getLastChangeVersion(), is(lastChangeVersion));
+    assertThat(node2.getMetrics().getStaleSettings(), is(0L));
+
+    updateSynonym(node1, "Echeveria lindsayana E.Walther");
+
+    String changedSettingsTag = node2.getSettingsTag(SETTINGS_KEY);
+    assertThat(changedSettingsTag, is(not(settingsTag)));
+    assertThat(node2.getSettingsTag(SETTINGS_KEY), is(changedSettingsTag));
+    assertThat(node2.getLastChangeVersion(), is(lastChangeVersion + 1));
+  }
+
+  @Test
+  public void testTagsChangeWithChangesOnAnotherNode() {
+    node1.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node2.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+    readSynonym(node2);
+    String settingsTag = node2.getSettingsTag(SETTINGS_KEY);
+    String manifestTag = node2.getManifestTag();
+
+    assertThat(node2.getSettingsTag(SETTINGS_KEY), is(settingsTag));
+
+    updateSynonym(node1, "Echeveria lindsayana E.Walther");
+    node1.saveSettings(SettingsSample.graptopetalum_amethystinum());
+
+    assertThat(node2.getSettingsTag(SETTINGS_KEY), is(not(settingsTag)));
+    assertThat(node2.getManifestTag(), is(not(manifestTag)));
+  }
+
+  @Test
+  public void testVersionIsCheckedOncePerInterval() {
+    node1.setVersionCheckInterval(1, TimeUnit.HOURS);
+    node2.setVersionCheckInterval(1, TimeUnit.HOURS);
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+    readSynonym(node2);
+
+    updateSynonym(node1, "Echeveria lindsayana E.Walther");
+    pluginSettings.resetCounts();
+
+    assertThat(readSynonym(node2), is((String) null));
+    assertThat(pluginSettings.getReads(), is(0L));
+  }
+
+  @Test
+  public void testClusterChannelDropsCachedSettings() {
+    LocalClusterChannel channel1 = new LocalClusterChannel();
+    LocalClusterChannel channel2 = new LocalClusterChannel();
+    channel1.other = channel2;
+    channel2.other = channel1;
+    node1.setVersionCheckInterval(1, TimeUnit.HOURS);
+    node2.setVersionCheckInterval(1, TimeUnit.HOURS);
+    node1.setClusterChannel(channel1);
+    node2.setClusterChannel(channel2);
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+    readSynonym(node2);
+
+    updateSynonym(node1, "Echeveria lindsayana E.Walther");
+
+    assertThat(readSynonym(node2), is("Echeveria lindsayana E.Walther"));
+  }
+
+  @Test
+  public void testManifestChangesOnAnotherNodeAreSeen() {
+    node1.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node2.setVersionCheckInterval(0, TimeUnit.SECONDS);
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+    assertThat(node2.hasSettings("graptopetalum"), is(false));
+
+    node1.saveSettings(SettingsSample.graptopetalum_amethystinum());
+
+    assertThat(node2.hasSettings("graptopetalum"), is(true));
+    assertThat(node2.getManifest().size(), is(2));
+
+    node1.removeAllSettings("graptopetalum");
+
+    assertThat(node2.hasSettings("graptopetalum"), is(false));
+  }
+
+  @Test
+  public void testNodesTakingTurnsAlwaysReadTheLatestSettings() {
+    List<SettingsManager> nodes = Lists.newArrayList(node1, node2,
+        new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY));
+    nodes.forEach(node -> node.setVersionCheckInterval(0, TimeUnit.SECONDS));
+    node1.saveSettings(SettingsSample.echeveria_colorata());
+
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      String synonym = "synonym " + round;
+      updateSynonym(nodes.get(random.nextInt(nodes.size())), synonym);
+      for (SettingsManager node : nodes) {
+        assertThat(readSynonym(node), is(synonym));
+      }
+    }
+  }
+
+  private static class LocalClusterChannel implements SettingsClusterChannel {
+
+    private LocalClusterChannel other;
+    private Consumer<String> receiver;
+
+    @Override
+    public void send(String settingsKey) {
+      other.receiver.accept(settingsKey);
+    }
+
+    @Override
+    public void setReceiver(Consumer<String> receiver) {
+      this.receiver = receiver;
+    }
+
+  }
+
+}
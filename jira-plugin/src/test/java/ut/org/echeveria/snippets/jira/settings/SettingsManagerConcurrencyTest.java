@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SettingsManagerConcurrencyTest {
+
+  private static final int THREADS = 8;
+  private static final int SAVES_PER_THREAD = 50;
+
+  private ExecutorService executorService;
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    executorService = Executors.newFixedThreadPool(THREADS);
+    settingsManager = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+  }
+
+  /**
+   * Saves new settings from all the threads at once, each with its own synonym.
+   */
+  private void saveConcurrently() throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = Lists.newArrayList();
+    for (int thread = 0; thread < THREADS; thread++) {
+      int threadIndex = thread;
+      futures.add(executorService.submit(() -> {
+        start.await();
+        for (int i = 0; i < SAVES_PER_THREAD; i++) {
+          Echeveria echeveria = SettingsSample.echeveria_colorata();
+          echeveria.setSynonym(threadIndex + ":" + i);
+          settingsManager.saveSettings(echeveria);
+          // Reading in between lets the cache be loaded while the others are writing.
+          settingsManager.getSettingsCount("echeveria");
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+  }
+
+  private void assertNoSettingsLost() {
+    List<Echeveria> echeverias = settingsManager.getAllSettings("echeveria", Echeveria.class);
+    Set<String> synonyms = echeverias.stream().map(Echeveria::getSynonym).collect(Collectors.toSet());
+
+    assertThat(echeverias.size(), is(THREADS * SAVES_PER_THREAD));
+    assertThat(synonyms.size(), is(THREADS * SAVES_PER_THREAD));
+    for (int index = 0; index < echeverias.size(); index++) {
+      assertThat(echeverias.get(index).getSettingsId(), is(index));
+    }
+    assertThat(settingsManager.getSettingsCount("echeveria"), is(THREADS * SAVES_PER_THREAD));
+  }
+
+  @Test
+  public void testConcurrentSavesAreNotLost() throws Exception {
+    saveConcurrently();
+
+    assertNoSettingsLost();
+  }
+
+  @Test
+  public void testConcurrentSavesAreNotLostWhenLockingOptimistically() throws Exception {
+    settingsManager.setOptimisticLocking(true);
+
+    saveConcurrently();
+
+    assertNoSettingsLost();
+  }
+
+  @Test
+  public void testConcurrentSavesInPagesAreNotLost() throws Exception {
+    settingsManager.setPageSize(16);
+
+    saveConcurrently();
+
+    assertNoSettingsLost();
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.BinarySettingsCodec;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Cultivar;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SettingsManagerExportTest {
+
+  private SettingsManager source;
+
+  private SettingsManager target;
+
+  @Before
+  public void setup() {
+    source = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+    target = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+  }
+
+  private String export(SettingsManager settingsManager) throws IOException {
+    StringWriter writer = new StringWriter();
+    settingsManager.exportSettings(writer);
+    return writer.toString();
+  }
+
+  private static List<String> synonyms(SettingsManager settingsManager) {
+    return settingsManager.getAllSettings("echeveria", Echeveria.class).stream()
+        .map(Echeveria::getSynonym)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testExportAndImportAllSettings() throws IOException {
+    source.setPageSize(2);
+    for (int i = 0; i < 5; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_colorata();
+      echeveria.setSynonym("synonym " + i);
+      source.saveSettings(echeveria);
+    }
+    source.setSettingsCodec(new BinarySettingsCodec());
+    source.saveSettings(SettingsSample.graptopetalum_amethystinum());
+    Cultivar lola = SettingsSample.cultivar_lola();
+    source.saveSettings(lola);
+
+    String export = export(source);
+    assertThat(export.split("\n").length, is(7));
+
+    assertThat(target.importSettings(new StringReader(export)), is(7));
+
+    assertThat(target.getManifest(), is(source.getManifest()));
+    assertThat(synonyms(target), is(synonyms(source)));
+    assertThat(target.getSettingsCount("graptopetalum"), is(1));
+    assertThat(target.getSettings("cultivar", Cultivar.class, lola.getSettingsId()).getName(), is("Lola"));
+    assertThat(export(target), is(export));
+  }
+
+  @Test
+  public void testImportReplacesOnlyTheImportedSettingsKeys() throws IOException {
+    source.saveSettings(SettingsSample.echeveria_elegans());
+    target.saveAllSettings(Lists.newArrayList(
+        SettingsSample.echeveria_colorata(),
+        SettingsSample.echeveria_derenbergii(),
+        SettingsSample.graptopetalum_amethystinum()));
+
+    target.importSettings(new StringReader(export(source)));
+
+    List<Echeveria> echeverias = target.getAllSettings("echeveria", Echeveria.class);
+    assertThat(echeverias.size(), is(1));
+    assertThat(echeverias.get(0).getSpecies(), is("elegans"));
+    assertThat(target.getSettingsCount("graptopetalum"), is(1));
+  }
+
+  @Test
+  public void testImportManySettingsInBatches() throws IOException {
+    List<Echeveria> echeverias = Lists.newArrayList();
+    for (int i = 0; i < 1_234; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_hyalina();
+      echeveria.setSynonym("synonym " + i);
+      echeverias.add(echeveria);
+    }
+    source.saveAllSettings(echeverias);
+    target.setPageSize(100);
+
+    assertThat(target.importSettings(new StringReader(export(source))), is(1_234));
+
+    assertThat(synonyms(target), is(synonyms(source)));
+    assertThat(target.getSettings("echeveria", Echeveria.class, 1_233).getSettingsId(), is(1_233));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testImportRejectsLinesOtherThanSettings() throws IOException {
+    target.importSettings(new StringReader("{\"settingsKey\":\"echeveria\"}\n"));
+  }
+
+  @Test
+  public void testImportChecksEveryLineBeforeReplacingSettings() throws IOException {
+    List<Echeveria> echeverias = Lists.newArrayList();
+    for (int i = 0; i < 700; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_hyalina();
+      echeveria.setSynonym("synonym " + i);
+      echeverias.add(echeveria);
+    }
+    source.saveAllSettings(echeverias);
+    target.saveSettings(SettingsSample.echeveria_elegans());
+    List<String> lines = Lists.newArrayList(export(source).split("\n"));
+    lines.set(600, "{");
+
+    try {
+      target.importSettings(new StringReader(String.join("\n", lines)));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), is("Line 601 is not a JSON object."));
+    }
+
+    assertThat(target.getSettingsCount("echeveria"), is(1));
+    assertThat(target.getSettings("echeveria", Echeveria.class, 0).getSpecies(), is("elegans"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testImportRejectsSettingsKeysOnSeparateLines() throws IOException {
+    source.saveSettings(SettingsSample.echeveria_elegans());
+    source.saveSettings(SettingsSample.graptopetalum_amethystinum());
+    String export = export(source);
+
+    target.importSettings(new StringReader(export + export));
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testExportFailsIfPagedSettingsAreChangedBetweenPages() throws IOException {
+    source.setPageSize(1);
+    source.saveSettings(SettingsSample.echeveria_colorata());
+    source.saveSettings(SettingsSample.echeveria_derenbergii());
+    source.saveSettings(SettingsSample.echeveria_elegans());
+    Echeveria derenbergii = source.getSettings("echeveria", Echeveria.class, 1);
+
+    source.exportSettings(new StringWriter() {
+      private boolean removed;
+
+      @Override
+      public void write(String str) {
+        super.write(str);
+        if (!removed) {
+          removed = true;
+          // Shifts the later pages while the first one is being exported.
+          source.removeSettings(derenbergii);
+        }
+      }
+    });
+  }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.BinarySettingsCodec;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsJsonPage;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Cultivar;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class SettingsManagerJsonTest {
+
+  private static final String SETTINGS_KEY = "echeveria";
+
+  private MemoryPluginSettings pluginSettings;
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    pluginSettings = new MemoryPluginSettings();
+    settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+  }
+
+  private static JsonObject parse(String json) {
+    return new JsonParser().parse(json).getAsJsonObject();
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> getStoredSettings() {
+    return (List<String>) pluginSettings.get(MyPluginComponent.PLUGIN_KEY + ":" + SETTINGS_KEY);
+  }
+
+  @Test
+  public void testSettingsJsonIsAsStored() {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+
+    List<String> settingsJson = settingsManager.getSettingsJsonPage(SETTINGS_KEY, 1, 5);
+
+    assertThat(settingsJson, is(getStoredSettings().subList(1, 3)));
+    assertThat(settingsManager.getSettingsJson(SETTINGS_KEY, 0), is(getStoredSettings().get(0)));
+    assertThat(settingsManager.getSettingsJson(SETTINGS_KEY, 3), is(nullValue()));
+  }
+
+  @Test
+  public void testWriteSettingsPageAsStored() throws IOException {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+    // Not cached, so the settings are streamed from the plugin settings.
+    settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+
+    StringWriter writer = new StringWriter();
+    int written = settingsManager.writeSettingsPage(SETTINGS_KEY, 1, 5, writer);
+
+    assertThat(written, is(2));
+    assertThat(writer.toString(), is("{\"settingsKey\":\"echeveria\",\"offset\":1,\"total\":3,\"settings\":["
+        + getStoredSettings().get(1) + "," + getStoredSettings().get(2) + "]}"));
+  }
+
+  @Test
+  public void testSettingsJsonPageIsOfItsTag() throws IOException {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+
+    SettingsJsonPage page = settingsManager.openSettingsJsonPage(SETTINGS_KEY, 0, 10);
+    String tag = settingsManager.getSettingsTag(SETTINGS_KEY);
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    StringWriter writer = new StringWriter();
+    assertThat(page.getTag(), is(tag));
+    assertThat(page.write(writer), is(1));
+    assertThat(parse(writer.toString()).get("total").getAsInt(), is(1));
+    assertThat(settingsManager.getSettingsTag(SETTINGS_KEY), is(not(tag)));
+  }
+
+  @Test
+  public void testWriteSettingsPageBeyondTheEnd() throws IOException {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    StringWriter writer = new StringWriter();
+    int written = settingsManager.writeSettingsPage(SETTINGS_KEY, 5, 10, writer);
+
+    assertThat(written, is(0));
+    JsonObject page = parse(writer.toString());
+    assertThat(page.get("total").getAsInt(), is(1));
+    assertThat(page.getAsJsonArray("settings").size(), is(0));
+  }
+
+  @Test
+  public void testSettingsOfOtherCodecsAreDecodedIntoJson() {
+    settingsManager.setSettingsCodec(new BinarySettingsCodec());
+    settingsManager.setCompressionThreshold(1);
+    Cultivar lola = SettingsSample.cultivar_lola();
+    settingsManager.saveSettings(lola);
+
+    JsonObject settings = parse(settingsManager.getSettingsJson("cultivar", lola.getSettingsId()));
+
+    assertThat(settings.get("name").getAsString(), is("Lola"));
+    assertThat(settings.get("settingsId").getAsString(), is(lola.getSettingsId()));
+  }
+
+  @Test
+  public void testAddAndUpdateSettingsJson() {
+    JsonObject added = parse("{\"genus\":\"Echeveria\",\"species\":\"agavoides\"}");
+    JsonObject keyed = parse("{\"settingsId\":\"lipstick\",\"name\":\"Lipstick\"}");
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    settingsManager.batch()
+        .addJson(SETTINGS_KEY, added)
+        .addJson("cultivar", keyed)
+        .commit();
+
+    assertThat(added.get("settingsId").getAsInt(), is(1));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1).getSpecies(), is("agavoides"));
+    assertThat(settingsManager.getSettings("cultivar", Cultivar.class, "lipstick").getName(), is("Lipstick"));
+
+    added.addProperty("synonym", "Echeveria obscura");
+    settingsManager.batch().updateJson(SETTINGS_KEY, added).commit();
+
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1).getSynonym(), is("Echeveria obscura"));
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSettingsJsonToUpdateMustExist() {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    settingsManager.batch().updateJson(SETTINGS_KEY, parse("{\"settingsId\":1}")).commit();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testKeyedSettingsJsonToAddMustNotExist() {
+    Cultivar lola = SettingsSample.cultivar_lola();
+    settingsManager.saveSettings(lola);
+
+    settingsManager.batch().addJson("cultivar", parse("{\"settingsId\":\"" + lola.getSettingsId() + "\"}")).commit();
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.GsonSettingsCodec;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Cultivar;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsManagerKeyedTest {
+
+  private static final String SETTINGS_KEY = "cultivar";
+  private static final String STORAGE_KEY = MyPluginComponent.PLUGIN_KEY + ":" + SETTINGS_KEY;
+
+  private MemoryPluginSettings pluginSettings;
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    pluginSettings = new MemoryPluginSettings();
+    settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+  }
+
+  @Test
+  public void testSaveKeyedSettings() {
+    Cultivar lola = SettingsSample.cultivar_lola();
+
+    assertThat(lola.isNewIn(settingsManager), is(true));
+
+    settingsManager.saveSettings(lola);
+
+    assertThat(lola.getSettingsId(), is(not(nullValue())));
+    assertThat(lola.isNewIn(settingsManager), is(false));
+    assertThat(((Map<?, ?>) pluginSettings.get(STORAGE_KEY)).size(), is(1));
+    assertThat(settingsManager.hasSettings(SETTINGS_KEY), is(true));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Cultivar.class, lola.getSettingsId()).getName(), is("Lola"));
+  }
+
+  @Test
+  public void testUpdateKeyedSettings() {
+    Cultivar lola = SettingsSample.cultivar_lola();
+    settingsManager.saveSettings(lola);
+    String settingsId = lola.getSettingsId();
+
+    lola.setName("Lola (variegated)");
+    int settingsCount = settingsManager.saveSettings(lola);
+
+    assertThat(settingsCount, is(1));
+    assertThat(lola.getSettingsId(), is(settingsId));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Cultivar.class, settingsId).getName(),
+        is("Lola (variegated)"));
+  }
+
+  @Test
+  public void testSaveUnchangedKeyedSettingsSkipsWrite() {
+    Cultivar lola = SettingsSample.cultivar_lola();
+    settingsManager.saveSettings(SettingsSample.cultivar_black_prince());
+    settingsManager.saveSettings(lola);
+    pluginSettings.resetCounts();
+
+    int count = settingsManager.saveSettings(lola);
+
+    assertThat(count, is(2));
+    assertThat(pluginSettings.getWrites(), is(0L));
+    assertThat(settingsManager.getMetrics().getSkippedWrites(), is(1L));
+  }
+
+  @Test
+  public void testRemoveKeyedSettingsKeepsOtherIds() {
+    Cultivar perleVonNurnberg = SettingsSample.cultivar_perle_von_nurnberg();
+    Cultivar lola = SettingsSample.cultivar_lola();
+    Cultivar blackPrince = SettingsSample.cultivar_black_prince();
+    settingsManager.batch()
+        .save(perleVonNurnberg)
+        .save(lola)
+        .save(blackPrince)
+        .commit();
+
+    int settingsCount = settingsManager.removeSettings(perleVonNurnberg);
+
+    assertThat(settingsCount, is(2));
+    assertThat(settingsManager.hasSettings(SETTINGS_KEY, perleVonNurnberg.getSettingsId()), is(false));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Cultivar.class, perleVonNurnberg.getSettingsId()),
+        is(nullValue()));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Cultivar.class, lola.getSettingsId()).getName(), is("Lola"));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Cultivar.class, blackPrince.getSettingsId()).getName(),
+        is("Black Prince"));
+  }
+
+  @Test
+  public void testCachedKeyedSettingsStayValidAcrossRemoves() {
+    Cultivar perleVonNurnberg = SettingsSample.cultivar_perle_von_nurnberg();
+    Cultivar lola = SettingsSample.cultivar_lola();
+    settingsManager.batch()
+        .save(perleVonNurnberg)
+        .save(lola)
+        .commit();
+    settingsManager.getSettings(SETTINGS_KEY, Cultivar.class, lola.getSettingsId());
+
+    settingsManager.removeSettings(perleVonNurnberg);
+    pluginSettings.resetCounts();
+
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Cultivar.class, lola.getSettingsId()).getName(), is("Lola"));
+    assertThat(pluginSettings.getReads(), is(0L));
+  }
+
+  @Test
+  public void testGetAllKeyedSettings() {
+    settingsManager.batch()
+        .save(SettingsSample.cultivar_lola())
+        .save(SettingsSample.cultivar_black_prince())
+        .commit();
+
+    List<Cultivar> cultivars = settingsManager.getAllSettings(SETTINGS_KEY, Cultivar.class);
+
+    assertThat(cultivars.size(), is(2));
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(2));
+  }
+
+  @Test
+  public void testRemoveAllKeyedSettings() {
+    settingsManager.batch()
+        .save(SettingsSample.cultivar_lola())
+        .save(SettingsSample.cultivar_black_prince())
+        .commit();
+
+    settingsManager.removeAllSettings(SETTINGS_KEY);
+
+    assertThat(pluginSettings.get(STORAGE_KEY), is(nullValue()));
+    assertThat(settingsManager.hasSettings(SETTINGS_KEY), is(false));
+    assertThat(settingsManager.getAllSettings(SETTINGS_KEY, Cultivar.class).isEmpty(), is(true));
+  }
+
+  @Test
+  public void testFindByUpdatesTheIndexFromTheChangedSettings() {
+    AtomicInteger decoded = new AtomicInteger();
+    settingsManager.setSettingsCodec(new GsonSettingsCodec() {
+      @Override
+      public <T> T decode(String encodedSettings, Class<T> classOfT) {
+        decoded.incrementAndGet();
+        return super.decode(encodedSettings, classOfT);
+      }
+    });
+    Cultivar perleVonNurnberg = SettingsSample.cultivar_perle_von_nurnberg();
+    Cultivar lola = SettingsSample.cultivar_lola();
+    Cultivar blackPrince = SettingsSample.cultivar_black_prince();
+    settingsManager.batch()
+        .save(perleVonNurnberg)
+        .save(lola)
+        .save(blackPrince)
+        .commit();
+    assertThat(settingsManager.findBy(SETTINGS_KEY, "name", "Lola", Cultivar.class).size(), is(1));
+
+    blackPrince.setName("Lola");
+    settingsManager.saveSettings(blackPrince);
+    settingsManager.removeSettings(perleVonNurnberg);
+    decoded.set(0);
+
+    List<Cultivar> lolas = settingsManager.findBy(SETTINGS_KEY, "name", "Lola", Cultivar.class);
+
+    assertThat(lolas.size(), is(2));
+    assertThat(decoded.get(), is(2)); // Only the settings found, the index is not built again.
+    assertThat(settingsManager.findBy(SETTINGS_KEY, "name", "Black Prince", Cultivar.class).isEmpty(), is(true));
+    assertThat(settingsManager.findBy(SETTINGS_KEY, "name", "Perle von Nurnberg", Cultivar.class).isEmpty(),
+        is(true));
+  }
+
+  @Test
+  public void testFindByAfterKeyedSettingsAreChangedElsewhere() {
+    Cultivar lola = SettingsSample.cultivar_lola();
+    Cultivar blackPrince = SettingsSample.cultivar_black_prince();
+    settingsManager.batch()
+        .save(lola)
+        .save(blackPrince)
+        .commit();
+    assertThat(settingsManager.findBy(SETTINGS_KEY, "name", "Lola", Cultivar.class).size(), is(1));
+
+    SettingsManager otherSettingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    Cultivar otherLola = otherSettingsManager.getSettings(SETTINGS_KEY, Cultivar.class, lola.getSettingsId());
+    otherLola.setName("Lola Rose");
+    otherSettingsManager.saveSettings(otherLola);
+    blackPrince.setName("Black Prince Rose");
+    settingsManager.saveSettings(blackPrince);
+
+    // Not updated from the settings changed by this node alone, as the others were changed too.
+    assertThat(settingsManager.findBy(SETTINGS_KEY, "name", "Lola", Cultivar.class).isEmpty(), is(true));
+    assertThat(settingsManager.findBy(SETTINGS_KEY, "name", "Lola Rose", Cultivar.class).size(), is(1));
+  }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.BinarySettingsCodec;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.gson.JsonObject;
+
+public class SettingsManagerMigrationTest {
+
+  private static final String SETTINGS_KEY = "echeveria";
+
+  private MemoryPluginSettings pluginSettings;
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    pluginSettings = new MemoryPluginSettings();
+    settingsManager = newSettingsManager();
+  }
+
+  private SettingsManager newSettingsManager() {
+    SettingsManager settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    settingsManager.registerMigration(Echeveria.class, 0, SettingsManagerMigrationTest::renameAliasToSynonym);
+    return settingsManager;
+  }
+
+  private static JsonObject renameAliasToSynonym(JsonObject settings) {
+    if (settings.has("alias")) {
+      settings.add("synonym", settings.remove("alias"));
+    }
+    return settings;
+  }
+
+  private static String export(SettingsManager settingsManager) throws IOException {
+    StringWriter writer = new StringWriter();
+    settingsManager.exportSettings(writer);
+    return writer.toString();
+  }
+
+  /**
+   * Stores the specified settings as if the synonym was named alias in the schema version 0.
+   */
+  private void storeWithAlias(List<Echeveria> echeverias) throws IOException {
+    SettingsManager oldSettingsManager = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+    oldSettingsManager.saveAllSettings(echeverias);
+    String export = export(oldSettingsManager).replace("\\\"synonym\\\"", "\\\"alias\\\"");
+    new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY).importSettings(new StringReader(export));
+  }
+
+  /**
+   * Stores the specified settings of the current schema version, except for the ones from the
+   * specified index, which are stored as if of the schema version 0.
+   */
+  private void storeWithAliasFrom(int fromIndex, List<Echeveria> echeverias) throws IOException {
+    SettingsManager currentSettingsManager = new SettingsManager(new MemoryPluginSettings(), MyPluginComponent.PLUGIN_KEY);
+    currentSettingsManager.registerMigration(Echeveria.class, 0, SettingsManagerMigrationTest::renameAliasToSynonym);
+    currentSettingsManager.saveAllSettings(echeverias);
+    List<String> lines = Lists.newArrayList(export(currentSettingsManager).split("\n"));
+    for (int i = fromIndex; i < lines.size(); i++) {
+      lines.set(i, lines.get(i)
+          .replace("\\\"synonym\\\"", "\\\"alias\\\"")
+          .replace("\\\"schemaVersion\\\":1", "\\\"schemaVersion\\\":0"));
+    }
+    new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY)
+        .importSettings(new StringReader(String.join("\n", lines)));
+  }
+
+  private void awaitMigration() throws Exception {
+    for (int i = 0; i < 100 && export(settingsManager).contains("\\\"alias\\\""); i++) {
+      Thread.sleep(100);
+    }
+  }
+
+  @Test
+  public void testSettingsOfAnOlderSchemaVersionAreMigratedAsRead() throws Exception {
+    Echeveria echeveria = SettingsSample.echeveria_colorata();
+    echeveria.setSynonym("Echeveria colorata f. brandtii");
+    storeWithAlias(Lists.newArrayList(echeveria));
+
+    Echeveria migrated = settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 0);
+
+    assertThat(migrated.getSynonym(), is("Echeveria colorata f. brandtii"));
+    assertThat(migrated.getSchemaVersion(), is(1));
+    assertThat(migrated.getSpecies(), is("colorata"));
+    assertThat(settingsManager.getMetrics().getMigratedSettings(), is(1L));
+  }
+
+  @Test
+  public void testMigratedSettingsAreWrittenBackInTheBackground() throws Exception {
+    List<Echeveria> echeverias = Lists.newArrayList();
+    for (int i = 0; i < 1_234; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_hyalina();
+      echeveria.setSynonym("synonym " + i);
+      echeverias.add(echeveria);
+    }
+    storeWithAlias(echeverias);
+
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 0).getSynonym(), is("synonym 0"));
+    awaitMigration();
+
+    String export = export(settingsManager);
+    assertThat(export, not(containsString("\\\"alias\\\"")));
+    assertThat(export, containsString("\\\"schemaVersion\\\":1"));
+    // Read again once written back, the settings are no longer migrated.
+    SettingsManager otherSettingsManager = newSettingsManager();
+    assertThat(otherSettingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1_233).getSynonym(), is("synonym 1233"));
+    assertThat(otherSettingsManager.getMetrics().getMigratedSettings(), is(0L));
+  }
+
+  @Test
+  public void testMigrationGoesOnPastSettingsAlreadyMigrated() throws Exception {
+    List<Echeveria> echeverias = Lists.newArrayList();
+    for (int i = 0; i < 1_200; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_hyalina();
+      echeveria.setSynonym("synonym " + i);
+      echeverias.add(echeveria);
+    }
+    // The first batch of the migration has nothing to write back.
+    storeWithAliasFrom(500, echeverias);
+
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 500).getSynonym(), is("synonym 500"));
+    awaitMigration();
+
+    String export = export(settingsManager);
+    assertThat(export, not(containsString("\\\"alias\\\"")));
+    assertThat(export, not(containsString("\\\"schemaVersion\\\":0")));
+    SettingsManager otherSettingsManager = newSettingsManager();
+    assertThat(otherSettingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1_199).getSynonym(), is("synonym 1199"));
+    assertThat(otherSettingsManager.getMetrics().getMigratedSettings(), is(0L));
+  }
+
+  @Test
+  public void testBinarySettingsAreMigrated() throws Exception {
+    settingsManager.setSettingsCodec(new BinarySettingsCodec());
+    Echeveria echeveria = SettingsSample.echeveria_elegans();
+    echeveria.setSynonym("Echeveria potosina");
+    settingsManager.saveSettings(echeveria);
+    settingsManager.registerMigration(Echeveria.class, 1, settings -> {
+      settings.addProperty("synonym", settings.get("synonym").getAsString().toUpperCase());
+      return settings;
+    });
+
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 0).getSynonym(), is("ECHEVERIA POTOSINA"));
+  }
+
+  @Test
+  public void testSettingsSavedAfterMigrationsAreOfTheCurrentSchemaVersion() {
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    SettingsManager otherSettingsManager = newSettingsManager();
+    assertThat(otherSettingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 0).getSchemaVersion(), is(1));
+    assertThat(otherSettingsManager.getMetrics().getMigratedSettings(), is(0L));
+  }
+
+  @Test
+  public void testSettingsAddedAsJsonAreOfTheCurrentSchemaVersion() {
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+    JsonObject settings = new JsonObject();
+    settings.addProperty("species", "elegans");
+    settings.addProperty("synonym", "Echeveria potosina");
+    settingsManager.batch().addJson(SETTINGS_KEY, settings).commit();
+
+    SettingsManager otherSettingsManager = newSettingsManager();
+    Echeveria added = otherSettingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1);
+    assertThat(added.getSchemaVersion(), is(1));
+    assertThat(added.getSynonym(), is("Echeveria potosina"));
+    assertThat(otherSettingsManager.getMetrics().getMigratedSettings(), is(0L));
+  }
+
+  @Test
+  public void testSettingsAddedAsJsonAfterRestartAreOfTheCurrentSchemaVersion() {
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+    SettingsManager restartedSettingsManager = newSettingsManager();
+    JsonObject settings = new JsonObject();
+    settings.addProperty("species", "elegans");
+    settings.addProperty("synonym", "Echeveria potosina");
+    restartedSettingsManager.batch().addJson(SETTINGS_KEY, settings).commit();
+
+    SettingsManager otherSettingsManager = newSettingsManager();
+    Echeveria added = otherSettingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1);
+    assertThat(added.getSchemaVersion(), is(1));
+    assertThat(added.getSynonym(), is("Echeveria potosina"));
+    assertThat(otherSettingsManager.getMetrics().getMigratedSettings(), is(0L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMigrationsAreRegisteredInOrder() {
+    settingsManager.registerMigration(Echeveria.class, 2, SettingsManagerMigrationTest::renameAliasToSynonym);
+  }
+
+}
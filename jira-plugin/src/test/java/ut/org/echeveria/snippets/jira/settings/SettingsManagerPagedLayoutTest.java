@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsJsonPage;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsManagerPagedLayoutTest {
+
+  private static final String SETTINGS_KEY = "echeveria";
+  private static final String STORAGE_KEY = MyPluginComponent.PLUGIN_KEY + ":" + SETTINGS_KEY;
+
+  private MemoryPluginSettings pluginSettings;
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    pluginSettings = new MemoryPluginSettings();
+    settingsManager = newSettingsManager(3);
+  }
+
+  private SettingsManager newSettingsManager(int pageSize) {
+    SettingsManager settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    settingsManager.setPageSize(pageSize);
+    return settingsManager;
+  }
+
+  private void saveSevenEcheverias() {
+    for (int i = 0; i < 7; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_colorata();
+      echeveria.setSynonym("synonym-" + i);
+      settingsManager.saveSettings(echeveria);
+    }
+  }
+
+  @Test
+  public void testSaveSettingsInPages() {
+    saveSevenEcheverias();
+
+    assertThat(pluginSettings.get(STORAGE_KEY), is("paged:3:7"));
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY + ":page:0")).size(), is(3));
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY + ":page:1")).size(), is(3));
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY + ":page:2")).size(), is(1));
+
+    List<Echeveria> echeverias = settingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class);
+
+    assertThat(echeverias.size(), is(7));
+    for (int i = 0; i < 7; i++) {
+      assertThat(echeverias.get(i).getSettingsId(), is(i));
+      assertThat(echeverias.get(i).getSynonym(), is("synonym-" + i));
+    }
+  }
+
+  @Test
+  public void testCachedSettingsAreReadInFullOnce() {
+    saveSevenEcheverias();
+    settingsManager = newSettingsManager(3);
+    pluginSettings.resetCounts();
+
+    Echeveria echeveria = settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 4);
+    settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 6);
+
+    assertThat(echeveria.getSynonym(), is("synonym-4"));
+    assertThat(pluginSettings.getReads(), is(4L)); // The header and the three pages
+  }
+
+  @Test
+  public void testCachedSettingsAreReadAsCachedWhenRemovedElsewhere() {
+    for (int i = 0; i < 5; i++) {
+      Echeveria echeveria = SettingsSample.echeveria_colorata();
+      echeveria.setSynonym("synonym-" + i);
+      settingsManager.saveSettings(echeveria);
+    }
+    settingsManager = newSettingsManager(3);
+    settingsManager.setVersionCheckInterval(1, TimeUnit.MINUTES);
+    SettingsManager otherSettingsManager = newSettingsManager(3);
+    otherSettingsManager.setVersionCheckInterval(1, TimeUnit.MINUTES);
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 0).getSynonym(), is("synonym-0"));
+
+    otherSettingsManager.removeSettings(otherSettingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 4));
+    otherSettingsManager.removeSettings(otherSettingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 3));
+
+    // Not noticed within the version check interval, but read as they were cached rather than failing.
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 4).getSynonym(), is("synonym-4"));
+    assertThat(otherSettingsManager.getSettingsCount(SETTINGS_KEY), is(3));
+  }
+
+  @Test
+  public void testGetSettingsPageReadsOnlyItsPages() {
+    saveSevenEcheverias();
+    settingsManager = newSettingsManager(3);
+    pluginSettings.resetCounts();
+
+    List<Echeveria> echeverias = settingsManager.getSettingsPage(SETTINGS_KEY, Echeveria.class, 2, 3);
+
+    assertThat(echeverias.size(), is(3));
+    assertThat(echeverias.get(0).getSynonym(), is("synonym-2"));
+    assertThat(echeverias.get(2).getSynonym(), is("synonym-4"));
+    assertThat(pluginSettings.getReads(), is(3L)); // The header and the two pages
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testStreamSettingsFailsIfChangedBetweenPages() {
+    saveSevenEcheverias();
+    settingsManager = newSettingsManager(3);
+    Iterator<Echeveria> echeverias = settingsManager.streamSettings(SETTINGS_KEY, Echeveria.class).iterator();
+
+    assertThat(echeverias.next().getSynonym(), is("synonym-0"));
+
+    settingsManager.removeSettings(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1));
+    // The next page is not read as it is now, shifted, with the header read before the change.
+    while (echeverias.hasNext()) {
+      echeverias.next();
+    }
+  }
+
+  @Test
+  public void testWriteSettingsPageReadsOnlyItsPages() throws IOException {
+    saveSevenEcheverias();
+    settingsManager = newSettingsManager(3);
+    pluginSettings.resetCounts();
+
+    StringWriter writer = new StringWriter();
+    int written = settingsManager.writeSettingsPage(SETTINGS_KEY, 4, 2, writer);
+
+    assertThat(written, is(2));
+    assertThat(writer.toString().contains("synonym-5"), is(true));
+    assertThat(pluginSettings.getReads(), is(2L)); // The header and the page
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testSettingsJsonPageFailsIfChangedBeforeWritten() throws IOException {
+    saveSevenEcheverias();
+    settingsManager = newSettingsManager(3);
+
+    SettingsJsonPage page = settingsManager.openSettingsJsonPage(SETTINGS_KEY, 2, 3);
+    settingsManager.saveSettings(SettingsSample.echeveria_hyalina());
+
+    page.write(new StringWriter());
+  }
+
+  @Test
+  public void testAddSettingsWritesOnlyTheLastPage() {
+    saveSevenEcheverias();
+    pluginSettings.resetCounts();
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    assertThat(pluginSettings.getReads(), is(2L)); // The header and the last page
+    assertThat(pluginSettings.getWrites(), is(2L)); // The last page and the header
+    assertThat(pluginSettings.get(STORAGE_KEY), is("paged:3:8"));
+  }
+
+  @Test
+  public void testRemoveSettingsShiftsPages() {
+    saveSevenEcheverias();
+
+    settingsManager.removeSettings(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1));
+
+    assertThat(pluginSettings.get(STORAGE_KEY), is("paged:3:6"));
+    assertThat(pluginSettings.get(STORAGE_KEY + ":page:2"), nullValue());
+
+    List<Echeveria> echeverias = settingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class);
+
+    assertThat(echeverias.size(), is(6));
+    assertThat(echeverias.get(1).getSynonym(), is("synonym-2"));
+    assertThat(echeverias.get(5).getSynonym(), is("synonym-6"));
+  }
+
+  @Test
+  public void testRemoveAllSettingsRemovesPages() {
+    saveSevenEcheverias();
+
+    settingsManager.removeAllSettings(SETTINGS_KEY);
+
+    assertThat(pluginSettings.get(STORAGE_KEY), nullValue());
+    assertThat(pluginSettings.get(STORAGE_KEY + ":page:0"), nullValue());
+    assertThat(settingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class).size(), is(0));
+    assertThat(settingsManager.hasSettings(SETTINGS_KEY), is(false));
+  }
+
+  @Test
+  public void testSingleListIsMigratedToPages() {
+    settingsManager = newSettingsManager(0);
+    saveSevenEcheverias();
+
+    assertThat(pluginSettings.get(STORAGE_KEY), instanceOf(List.class));
+
+    settingsManager = newSettingsManager(2);
+
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 6).getSynonym(), is("synonym-6"));
+    assertThat(pluginSettings.get(STORAGE_KEY), instanceOf(List.class));
+
+    settingsManager.saveSettings(SettingsSample.echeveria_hyalina());
+
+    assertThat(pluginSettings.get(STORAGE_KEY), is("paged:2:8"));
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY + ":page:3")).size(), is(2));
+
+    // Settings stored in pages are read in pages whatever the page size is.
+    settingsManager = newSettingsManager(0);
+
+    assertThat(settingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class).size(), is(8));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 7).getSpecies(), is("hyalina"));
+  }
+
+}
@@ -27,14 +27,22 @@ package ut.org.echeveria.snippets.jira.settings;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.Settings;
+import org.echeveria.snippets.jira.settings.SettingsChangedEvent;
 import org.echeveria.snippets.jira.settings.SettingsManager;
 import org.echeveria.snippets.jira.settings.SettingsSample;
 import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
@@ -47,8 +55,10 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import com.atlassian.event.api.EventPublisher;
 import com.atlassian.sal.api.pluginsettings.PluginSettings;
 import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -62,6 +72,9 @@ public class SettingsManagerTest {
   @Mock
   private PluginSettingsFactory pluginSettingsFactory;
 
+  @Mock
+  private EventPublisher eventPublisher;
+
   private SettingsManager settingsManager;
 
   @SuppressWarnings("unchecked")
@@ -123,6 +136,44 @@ public class SettingsManagerTest {
     assertThat(echeveria_colorata.getSynonym(), is("Echeveria lindsayana E.Walther"));
   }
 
+  @Test
+  public void testSaveSettingsReadsAndWritesSettingsOnce() {
+    String settingsStorageKey = MyPluginComponent.PLUGIN_KEY + ":echeveria";
+    settingsMap.put(settingsStorageKey, Lists.newArrayList("{}", "{}", "{}"));
+
+    int settingsCount = settingsManager.saveSettings(Settings.Sequenced.create("echeveria"));
+
+    assertThat(settingsCount, is(4));
+    verify(pluginSettings, times(1)).get(settingsStorageKey);
+    verify(pluginSettings, times(1)).put(settingsStorageKey, settingsMap.get(settingsStorageKey));
+  }
+
+  @Test
+  public void testUpdateSettingsReadsAndWritesSettingsOnce() {
+    String settingsStorageKey = MyPluginComponent.PLUGIN_KEY + ":echeveria";
+    settingsMap.put(settingsStorageKey, Lists.newArrayList("{}", "{}", "{}"));
+
+    int settingsCount = settingsManager.saveSettings(Settings.Sequenced.create("echeveria", 1));
+
+    assertThat(settingsCount, is(3));
+    verify(pluginSettings, times(1)).get(settingsStorageKey);
+    verify(pluginSettings, times(1)).put(settingsStorageKey, settingsMap.get(settingsStorageKey));
+  }
+
+  @Test
+  public void testGetSettingsCount() {
+    String settingsKey = "echeveria";
+
+    assertThat(settingsManager.getSettingsCount(settingsKey), is(0));
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    assertThat(settingsManager.getSettingsCount(settingsKey), is(2));
+    assertThat(settingsManager.hasSettings(settingsKey, 1), is(true));
+    assertThat(settingsManager.hasSettings(settingsKey, 2), is(false));
+  }
+
   @Test
   public void testRemoveSettings() {
     String settingsKey = "echeveria";
@@ -217,6 +268,335 @@ public class SettingsManagerTest {
     assertThat(echeverias.get(3).getSpecies(), is("hyalina"));
   }
 
+  // Settings batch tests
+
+  @Test
+  public void testSaveAllSettings() {
+    String echeveriaStorageKey = MyPluginComponent.PLUGIN_KEY + ":echeveria";
+    String graptopetalumStorageKey = MyPluginComponent.PLUGIN_KEY + ":graptopetalum";
+    String manifestStorageKey = MyPluginComponent.PLUGIN_KEY + ":manifest";
+
+    settingsManager.saveAllSettings(Lists.newArrayList(
+        SettingsSample.echeveria_colorata(),
+        SettingsSample.echeveria_derenbergii(),
+        SettingsSample.graptopetalum_amethystinum(),
+        SettingsSample.echeveria_elegans(),
+        SettingsSample.graptopetalum_macdougallii()));
+
+    verify(pluginSettings, times(1)).get(echeveriaStorageKey);
+    verify(pluginSettings, times(1)).put(echeveriaStorageKey, settingsMap.get(echeveriaStorageKey));
+    verify(pluginSettings, times(1)).get(graptopetalumStorageKey);
+    verify(pluginSettings, times(1)).put(graptopetalumStorageKey, settingsMap.get(graptopetalumStorageKey));
+    verify(pluginSettings, times(1)).get(manifestStorageKey);
+    verify(pluginSettings, times(1)).put(manifestStorageKey, settingsMap.get(manifestStorageKey));
+
+    List<Echeveria> echeverias = settingsManager.getAllSettings("echeveria", Echeveria.class);
+
+    assertThat(echeverias.size(), is(3));
+    assertThat(echeverias.get(2).getSettingsId(), is(2));
+    assertThat(echeverias.get(2).getSpecies(), is("elegans"));
+    assertThat(settingsManager.getManifest().size(), is(2));
+  }
+
+  @Test
+  public void testBatch() {
+    String settingsKey = "echeveria";
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    Echeveria echeveria_colorata = settingsManager.getSettings(settingsKey, Echeveria.class, 0);
+    echeveria_colorata.setSynonym("Echeveria lindsayana E.Walther");
+    Echeveria echeveria_derenbergii = settingsManager.getSettings(settingsKey, Echeveria.class, 1);
+
+    settingsManager.batch()
+        .save(echeveria_colorata)
+        .remove(echeveria_derenbergii)
+        .save(SettingsSample.echeveria_elegans())
+        .removeAll("graptopetalum")
+        .commit();
+
+    List<Echeveria> echeverias = settingsManager.getAllSettings(settingsKey, Echeveria.class);
+
+    assertThat(echeverias.size(), is(2));
+    assertThat(echeverias.get(0).getSynonym(), is("Echeveria lindsayana E.Walther"));
+    assertThat(echeverias.get(1).getSettingsId(), is(1));
+    assertThat(echeverias.get(1).getSpecies(), is("elegans"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testBatchCannotBeCommittedTwice() {
+    SettingsManager.Batch batch = settingsManager.batch().save(SettingsSample.echeveria_colorata());
+    batch.commit();
+    batch.commit();
+  }
+
+  // Settings cache tests
+
+  @Test
+  public void testGetAllSettingsIsCached() {
+    String settingsKey = "echeveria";
+
+    MemoryPluginSettings memoryPluginSettings = new MemoryPluginSettings();
+    settingsManager = new SettingsManager(memoryPluginSettings, MyPluginComponent.PLUGIN_KEY);
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    List<Echeveria> echeverias = settingsManager.getAllSettings(settingsKey, Echeveria.class);
+    memoryPluginSettings.resetCounts();
+
+    assertThat(settingsManager.getAllSettings(settingsKey, Echeveria.class).get(0).getSpecies(),
+        is(echeverias.get(0).getSpecies()));
+    assertThat(settingsManager.getSettings(settingsKey, Echeveria.class).getSpecies(),
+        is(echeverias.get(0).getSpecies()));
+    assertThat(memoryPluginSettings.getReads(), is(0L));
+  }
+
+  @Test
+  public void testCachedSettingsAreNotSharedBetweenReaders() {
+    String settingsKey = "echeveria";
+    String synonym = SettingsSample.echeveria_colorata().getSynonym();
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    settingsManager.getAllSettings(settingsKey, Echeveria.class).get(0).setSynonym("UNSAVED");
+    assertThat(settingsManager.getAllSettings(settingsKey, Echeveria.class).get(0).getSynonym(), is(synonym));
+    settingsManager.getSettings(settingsKey, Echeveria.class).setSynonym("UNSAVED");
+    assertThat(settingsManager.getSettings(settingsKey, Echeveria.class).getSynonym(), is(synonym));
+  }
+
+  @Test
+  public void testSaveSettingsInvalidatesCache() {
+    String settingsKey = "echeveria";
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    List<Echeveria> echeverias = settingsManager.getAllSettings(settingsKey, Echeveria.class);
+
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    assertThat(echeverias.size(), is(1));
+    assertThat(settingsManager.getAllSettings(settingsKey, Echeveria.class).size(), is(2));
+
+    settingsManager.removeSettings(settingsManager.getSettings(settingsKey, Echeveria.class, 1));
+
+    assertThat(settingsManager.getAllSettings(settingsKey, Echeveria.class).size(), is(1));
+  }
+
+  @Test
+  public void testSaveSettingsPublishesSettingsChangedEvent() {
+    settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY, eventPublisher);
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    ArgumentCaptor<SettingsChangedEvent> eventArg = ArgumentCaptor.forClass(SettingsChangedEvent.class);
+    verify(eventPublisher, times(1)).publish(eventArg.capture());
+
+    assertThat(eventArg.getValue().getSource(), sameInstance(settingsManager));
+    assertThat(eventArg.getValue().getPluginKey(), is(MyPluginComponent.PLUGIN_KEY));
+    assertThat(eventArg.getValue().getSettingsKey(), is("echeveria"));
+  }
+
+  @Test
+  public void testSettingsChangedEventInvalidatesCache() {
+    String settingsKey = "echeveria";
+    SettingsManager otherSettingsManager =
+        new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY, eventPublisher);
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    assertThat(settingsManager.getAllSettings(settingsKey, Echeveria.class).size(), is(1));
+
+    otherSettingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    assertThat(settingsManager.getAllSettings(settingsKey, Echeveria.class).size(), is(1));
+
+    settingsManager.onSettingsChanged(
+        new SettingsChangedEvent(otherSettingsManager, MyPluginComponent.PLUGIN_KEY, settingsKey));
+
+    assertThat(settingsManager.getAllSettings(settingsKey, Echeveria.class).size(), is(2));
+  }
+
+  @Test
+  public void testStreamSettings() {
+    String settingsKey = "echeveria";
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+
+    List<String> species = settingsManager.streamSettings(settingsKey, Echeveria.class)
+        .filter(echeveria -> echeveria.getAuthor().equals("J.A.Purpus") || echeveria.getAuthor().equals("Rose"))
+        .map(Echeveria::getSpecies)
+        .collect(Collectors.toList());
+
+    assertThat(species, is(Arrays.asList("derenbergii", "elegans")));
+    assertThat(settingsManager.streamSettings("graptopetalum", Echeveria.class).count(), is(0L));
+  }
+
+  @Test
+  public void testStreamSettingsOnlyDeserializesWhatIsConsumed() {
+    String settingsStorageKey = MyPluginComponent.PLUGIN_KEY + ":echeveria";
+    // The second one is not even JSON, it should not be deserialized.
+    settingsMap.put(settingsStorageKey, Lists.newArrayList("{\"species\":\"colorata\"}", "#1"));
+
+    Echeveria echeveria = settingsManager.streamSettings("echeveria", Echeveria.class).findFirst().get();
+
+    assertThat(echeveria.getSpecies(), is("colorata"));
+  }
+
+  @Test
+  public void testGetSettingsPage() {
+    String settingsKey = "echeveria";
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+    settingsManager.saveSettings(SettingsSample.echeveria_hyalina());
+
+    List<Echeveria> echeverias = settingsManager.getSettingsPage(settingsKey, Echeveria.class, 1, 2);
+
+    assertThat(echeverias.size(), is(2));
+    assertThat(echeverias.get(0).getSpecies(), is("derenbergii"));
+    assertThat(echeverias.get(1).getSpecies(), is("elegans"));
+
+    // The same through the cache
+    settingsManager.getAllSettings(settingsKey, Echeveria.class);
+    echeverias = settingsManager.getSettingsPage(settingsKey, Echeveria.class, 3, 2);
+
+    assertThat(echeverias.size(), is(1));
+    assertThat(echeverias.get(0).getSpecies(), is("hyalina"));
+    assertThat(settingsManager.getSettingsPage(settingsKey, Echeveria.class, 4, 2), empty());
+  }
+
+  // Settings index tests
+
+  @Test
+  public void testFindBy() {
+    settingsManager.saveAllSettings(Lists.newArrayList(
+        SettingsSample.echeveria_colorata(),
+        SettingsSample.echeveria_derenbergii(),
+        SettingsSample.echeveria_elegans(),
+        SettingsSample.echeveria_hyalina()));
+
+    List<Echeveria> echeverias = settingsManager.findBy("echeveria", "author", "E.Walther", Echeveria.class);
+
+    assertThat(echeverias.size(), is(2));
+    assertThat(echeverias.get(0).getSpecies(), is("colorata"));
+    assertThat(echeverias.get(1).getSpecies(), is("hyalina"));
+    assertThat(settingsManager.findBy("echeveria", "author", "Britton", Echeveria.class).isEmpty(), is(true));
+  }
+
+  @Test
+  public void testFindByAfterSavingSettings() {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    assertThat(settingsManager.findBy("echeveria", "species", "elegans", Echeveria.class).isEmpty(), is(true));
+
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+
+    assertThat(settingsManager.findBy("echeveria", "species", "elegans", Echeveria.class).size(), is(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFindByFieldNotIndexed() {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    settingsManager.findBy("echeveria", "genus", "Echeveria", Echeveria.class);
+  }
+
+  // Settings unchanged tests
+
+  @Test
+  public void testSaveUnchangedSettingsSkipsWrite() {
+    settingsManager.saveAllSettings(Lists.newArrayList(
+        SettingsSample.echeveria_colorata(),
+        SettingsSample.echeveria_derenbergii(),
+        SettingsSample.echeveria_elegans()));
+    Echeveria echeveria_colorata = settingsManager.getSettings("echeveria", Echeveria.class);
+    List<String> storedSettings = settingsMap.get(MyPluginComponent.PLUGIN_KEY + ":echeveria");
+
+    int count = settingsManager.saveSettings(echeveria_colorata);
+
+    assertThat(count, is(3)); // Still the number of the settings, though none are written
+    // Not even written again as it is
+    assertThat(settingsMap.get(MyPluginComponent.PLUGIN_KEY + ":echeveria"), is(sameInstance(storedSettings)));
+    assertThat(settingsManager.getMetrics().getSkippedWrites(), is(1L));
+    assertThat(settingsManager.getMetrics().getWrites(), is(1L));
+  }
+
+  @Test
+  public void testSaveChangedSettingsAmongUnchangedOnes() {
+    settingsManager.saveAllSettings(Lists.newArrayList(
+        SettingsSample.echeveria_colorata(),
+        SettingsSample.echeveria_derenbergii()));
+    List<Echeveria> echeverias = settingsManager.getAllSettings("echeveria", Echeveria.class);
+    echeverias.get(1).setSynonym("Echeveria derenbergii var. minor");
+
+    settingsManager.saveAllSettings(echeverias);
+
+    assertThat(settingsManager.getMetrics().getSkippedWrites(), is(1L));
+    assertThat(settingsManager.getMetrics().getWrites(), is(2L));
+    assertThat(settingsManager.getSettings("echeveria", Echeveria.class, 1).getSynonym(),
+        is("Echeveria derenbergii var. minor"));
+  }
+
+  // Settings tag tests
+
+  @Test
+  public void testSettingsTagChangesAsSettingsChange() {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    String tag = settingsManager.getSettingsTag("echeveria");
+    Echeveria echeveria_colorata = settingsManager.getSettings("echeveria", Echeveria.class);
+
+    assertThat(settingsManager.getSettingsTag("echeveria"), is(tag));
+
+    settingsManager.saveSettings(echeveria_colorata); // Unchanged
+
+    assertThat(settingsManager.getSettingsTag("echeveria"), is(tag));
+
+    echeveria_colorata.setSynonym("Echeveria colorata f. brandtii");
+    settingsManager.saveSettings(echeveria_colorata);
+
+    assertThat(settingsManager.getSettingsTag("echeveria"), is(not(tag)));
+  }
+
+  @Test
+  public void testManifestTagChangesAsManifestChanges() {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    String tag = settingsManager.getManifestTag();
+
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    assertThat(settingsManager.getManifestTag(), is(tag));
+
+    settingsManager.saveSettings(SettingsSample.graptopetalum_amethystinum());
+
+    assertThat(settingsManager.getManifestTag(), is(not(tag)));
+  }
+
+  @Test
+  public void testTagsDoNotReadSettings() {
+    String manifestStorageKey = MyPluginComponent.PLUGIN_KEY + ":manifest";
+    String settingsStorageKey = MyPluginComponent.PLUGIN_KEY + ":echeveria";
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.getManifestTag();
+    settingsManager.getSettingsTag("echeveria");
+
+    // Only when the settings and the manifest are written.
+    verify(pluginSettings, times(1)).get(manifestStorageKey);
+    verify(pluginSettings, times(1)).get(settingsStorageKey);
+  }
+
+  @Test
+  public void testTagsOfAnotherSettingsManagerDiffer() {
+    SettingsManager otherSettingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+
+    assertThat(otherSettingsManager.getSettingsTag("echeveria"), is(not(settingsManager.getSettingsTag("echeveria"))));
+    assertThat(otherSettingsManager.getManifestTag(), is(not(settingsManager.getManifestTag())));
+  }
+
   // Settings manifest tests
 
   @Test
@@ -281,6 +661,38 @@ public class SettingsManagerTest {
     assertThat(settingsManager.hasSettings(settingsKey), is(false));
   }
 
+  @Test
+  public void testHasSettingsDoesNotReadManifestAgain() {
+    String manifestStorageKey = MyPluginComponent.PLUGIN_KEY + ":manifest";
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.hasSettings("echeveria");
+    settingsManager.hasSettings("graptopetalum");
+    settingsManager.getManifest();
+
+    // Once when the manifest is written, no more when it's queried.
+    verify(pluginSettings, times(1)).get(manifestStorageKey);
+    assertThat(settingsManager.hasSettings("echeveria"), is(true));
+    assertThat(settingsManager.hasSettings("graptopetalum"), is(false));
+  }
+
+  @Test
+  public void testSettingsChangedEventReloadsManifest() {
+    SettingsManager otherSettingsManager =
+        new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY, eventPublisher);
+
+    assertThat(settingsManager.hasSettings("echeveria"), is(false));
+
+    otherSettingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    assertThat(settingsManager.hasSettings("echeveria"), is(false));
+
+    settingsManager.onSettingsChanged(
+        new SettingsChangedEvent(otherSettingsManager, MyPluginComponent.PLUGIN_KEY, "echeveria"));
+
+    assertThat(settingsManager.hasSettings("echeveria"), is(true));
+  }
+
   @After
   public void tearDown() {
   }
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SettingsManagerWarmUpTest {
+
+  private MemoryPluginSettings pluginSettings;
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    pluginSettings = new MemoryPluginSettings();
+    SettingsManager otherSettingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    otherSettingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    otherSettingsManager.saveSettings(SettingsSample.graptopetalum_amethystinum());
+    otherSettingsManager.saveSettings(SettingsSample.cultivar_lola());
+
+    settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+  }
+
+  @Test
+  public void testWarmUpReadsAllSettings() throws Exception {
+    assertThat(settingsManager.isWarmedUp(), is(false));
+    assertThat(settingsManager.getMetrics().getWarmUpTime(TimeUnit.MILLISECONDS), is(-1L));
+
+    settingsManager.warmUp().get(10, TimeUnit.SECONDS);
+
+    assertThat(settingsManager.isWarmedUp(), is(true));
+    assertThat(settingsManager.getMetrics().getWarmUpTime(TimeUnit.NANOSECONDS) > 0, is(true));
+
+    pluginSettings.resetCounts();
+    assertThat(settingsManager.getSettingsCount("echeveria"), is(1));
+    assertThat(settingsManager.getSettingsCount("graptopetalum"), is(1));
+    assertThat(settingsManager.getSettingsCount("cultivar"), is(1));
+    assertThat(settingsManager.getSettings("echeveria", Echeveria.class).getSpecies(), is("colorata"));
+    assertThat(pluginSettings.getReads(), is(0L));
+  }
+
+  @Test
+  public void testWarmUpCompletesDespiteUnreadableSettings() throws Exception {
+    pluginSettings.put(MyPluginComponent.PLUGIN_KEY + ":echeveria", 42); // Neither a list nor a map
+
+    settingsManager.warmUp().get(10, TimeUnit.SECONDS);
+
+    assertThat(settingsManager.isWarmedUp(), is(true));
+    pluginSettings.resetCounts();
+    assertThat(settingsManager.getSettingsCount("cultivar"), is(1));
+    assertThat(pluginSettings.getReads(), is(0L));
+  }
+
+}
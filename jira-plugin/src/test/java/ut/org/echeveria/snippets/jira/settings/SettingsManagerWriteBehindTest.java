@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2019 Li Wan
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package ut.org.echeveria.snippets.jira.settings;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.Settings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SettingsManagerWriteBehindTest {
+
+  private static final String SETTINGS_KEY = "echeveria";
+  private static final String STORAGE_KEY = MyPluginComponent.PLUGIN_KEY + ":" + SETTINGS_KEY;
+
+  private MemoryPluginSettings pluginSettings;
+
+  private SettingsManager settingsManager;
+
+  @Before
+  public void setup() {
+    pluginSettings = new MemoryPluginSettings();
+    settingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+  }
+
+  @Test
+  public void testChangesAreWrittenOnFlush() {
+    settingsManager.setWriteBehind(1, TimeUnit.HOURS, 1_000);
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    Echeveria echeveria = settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 0);
+    echeveria.setSynonym("Echeveria lindsayana E.Walther");
+    settingsManager.saveSettings(echeveria);
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+
+    assertThat(pluginSettings.get(STORAGE_KEY), is(nullValue()));
+    List<Echeveria> echeverias = settingsManager.getAllSettings(SETTINGS_KEY, Echeveria.class);
+    assertThat(echeverias.size(), is(2));
+    assertThat(echeverias.get(0).getSynonym(), is("Echeveria lindsayana E.Walther"));
+
+    pluginSettings.resetCounts();
+    settingsManager.flush();
+
+    assertThat(pluginSettings.getWrites(), is(2L)); // The changes are coalesced, the manifest is added to.
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY)).size(), is(2));
+  }
+
+  @Test
+  public void testChangesAreWrittenAtThreshold() {
+    settingsManager.setWriteBehind(1, TimeUnit.HOURS, 3);
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    assertThat(pluginSettings.get(STORAGE_KEY), is(nullValue()));
+
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY)).size(), is(3));
+  }
+
+  @Test
+  public void testChangesAreWrittenOnSchedule() throws InterruptedException {
+    settingsManager.setWriteBehind(10, TimeUnit.MILLISECONDS, 1_000);
+
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    for (int i = 0; i < 200 && pluginSettings.get(STORAGE_KEY) == null; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY)).size(), is(1));
+  }
+
+  @Test
+  public void testStopWriteBehindWritesPendingChanges() {
+    settingsManager.setWriteBehind(1, TimeUnit.HOURS, 1_000);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    settingsManager.stopWriteBehind();
+
+    assertThat(settingsManager.isWriteBehind(), is(false));
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY)).size(), is(1));
+
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY)).size(), is(2));
+  }
+
+  @Test
+  public void testFailedBatchLeavesPendingChangesAsTheyAre() {
+    settingsManager.setWriteBehind(1, TimeUnit.HOURS, 1_000);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    assertFailedBatchIsNotApplied();
+
+    settingsManager.flush();
+
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY)).size(), is(2));
+  }
+
+  @Test
+  public void testFailedBatchLeavesPendingPagesAsTheyAre() {
+    settingsManager.setPageSize(1);
+    settingsManager.setWriteBehind(1, TimeUnit.HOURS, 1_000);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+
+    assertFailedBatchIsNotApplied();
+
+    settingsManager.flush();
+
+    assertThat(pluginSettings.get(STORAGE_KEY), is("paged:1:2"));
+    assertThat(pluginSettings.get(STORAGE_KEY + ":page:2"), is(nullValue()));
+  }
+
+  private void assertFailedBatchIsNotApplied() {
+    try {
+      settingsManager.batch()
+          .save(SettingsSample.echeveria_elegans())
+          .remove(Settings.Sequenced.create(SETTINGS_KEY, 99))
+          .commit();
+      fail("The settings to be removed do not exist.");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(2));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, Echeveria.class, 1).getSpecies(), is("derenbergii"));
+  }
+
+  @Test
+  public void testManifestIsWrittenAlongWithTheSettings() {
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.setWriteBehind(1, TimeUnit.HOURS, 1_000);
+
+    settingsManager.removeAllSettings(SETTINGS_KEY);
+    settingsManager.saveSettings(SettingsSample.cultivar_lola());
+
+    assertThat(settingsManager.getManifest(), is(ImmutableList.of("cultivar")));
+    // As if the node stopped before the changes were written.
+    SettingsManager otherSettingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    assertThat(otherSettingsManager.getManifest(), is(ImmutableList.of(SETTINGS_KEY)));
+    assertThat(otherSettingsManager.getSettingsCount(SETTINGS_KEY), is(1));
+
+    settingsManager.flush();
+
+    otherSettingsManager = new SettingsManager(pluginSettings, MyPluginComponent.PLUGIN_KEY);
+    assertThat(otherSettingsManager.getManifest(), is(ImmutableList.of("cultivar")));
+    assertThat(otherSettingsManager.getSettingsCount(SETTINGS_KEY), is(0));
+  }
+
+  @Test
+  public void testShutdownWritesPendingChanges() {
+    settingsManager.setWriteBehind(1, TimeUnit.HOURS, 1_000);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+
+    settingsManager.shutdown();
+
+    assertThat(settingsManager.isWriteBehind(), is(false));
+    assertThat(((List<?>) pluginSettings.get(STORAGE_KEY)).size(), is(1));
+  }
+
+  @After
+  public void tearDown() {
+    settingsManager.stopWriteBehind();
+  }
+
+}
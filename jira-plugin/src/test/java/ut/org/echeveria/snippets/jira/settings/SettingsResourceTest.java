@@ -24,31 +24,339 @@
 
 package ut.org.echeveria.snippets.jira.settings;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.MemoryPluginSettings;
+import org.echeveria.snippets.jira.settings.SettingsManager;
+import org.echeveria.snippets.jira.settings.SettingsResource;
+import org.echeveria.snippets.jira.settings.SettingsSample;
+import org.echeveria.snippets.jira.settings.SettingsSample.Cultivar;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.mock.component.MockComponentWorker;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.atlassian.sal.api.user.UserKey;
+import com.atlassian.sal.api.user.UserManager;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+@RunWith(MockitoJUnitRunner.class)
 public class SettingsResourceTest {
 
+  private static final String SETTINGS_KEY = "echeveria";
+
+  private static final UserKey ADMIN = new UserKey("admin");
+
+  private static final UserKey USER = new UserKey("user");
+
+  @Mock
+  private PluginSettingsFactory pluginSettingsFactory;
+
+  @Mock
+  private EventPublisher eventPublisher;
+
+  @Mock
+  private UserManager userManager;
+
+  private SettingsManager settingsManager;
+
+  private Cultivar lola;
+
+  private SettingsResource resource;
+
   @Before
   public void setup() {
+    when(pluginSettingsFactory.createGlobalSettings()).thenReturn(new MemoryPluginSettings());
+    when(userManager.getRemoteUserKey()).thenReturn(ADMIN);
+    when(userManager.isSystemAdmin(ADMIN)).thenReturn(true);
+    new MockComponentWorker()
+        .addMock(PluginSettingsFactory.class, pluginSettingsFactory)
+        .addMock(EventPublisher.class, eventPublisher)
+        .addMock(UserManager.class, userManager)
+        .init();
 
+    settingsManager = SettingsManager.getOrCreate(MyPluginComponent.PLUGIN_KEY);
+    settingsManager.saveSettings(SettingsSample.echeveria_colorata());
+    settingsManager.saveSettings(SettingsSample.echeveria_derenbergii());
+    lola = SettingsSample.cultivar_lola();
+    settingsManager.saveSettings(lola);
+    resource = new SettingsResource();
   }
 
   @After
   public void tearDown() {
+    SettingsManager.release(MyPluginComponent.PLUGIN_KEY);
+  }
+
+  /**
+   * Returns a request that evaluates {@code If-Match} and {@code If-None-Match} of the specified
+   * entity tags, or of none if null.
+   */
+  private static Request request(String ifMatch, String ifNoneMatch) {
+    Request request = mock(Request.class);
+    when(request.evaluatePreconditions(any(EntityTag.class))).thenAnswer(
+        (Answer<Response.ResponseBuilder>) invocation -> {
+          EntityTag entityTag = (EntityTag) invocation.getArguments()[0];
+          if (ifMatch != null && !ifMatch.equals(entityTag.getValue())) {
+            return Response.status(Response.Status.PRECONDITION_FAILED);
+          }
+          if (ifNoneMatch != null && ifNoneMatch.equals(entityTag.getValue())) {
+            return Response.notModified(entityTag);
+          }
+          return null;
+        });
+    return request;
+  }
+
+  private static Request request() {
+    return request(null, null);
+  }
+
+  private static String getTag(Response response) {
+    return ((EntityTag) response.getMetadata().getFirst("ETag")).getValue();
+  }
+
+  private static String read(Response response) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(outputStream);
+    return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static JsonObject readPage(Response response) throws IOException {
+    return new JsonParser().parse(read(response)).getAsJsonObject();
+  }
+
+  private static InputStream stream(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Read tests
+
+  @Test
+  public void testGetSettingsPage() throws Exception {
+    Response response = resource.getSettings(SETTINGS_KEY, 1, 50, null, request());
+
+    assertThat(response.getStatus(), is(200));
+    JsonObject page = readPage(response);
+    assertThat(page.get("total").getAsInt(), is(2));
+    assertThat(page.getAsJsonArray("settings").size(), is(1));
+    assertThat(page.getAsJsonArray("settings").get(0).getAsJsonObject().get("species").getAsString(),
+        is("derenbergii"));
+  }
+
+  @Test
+  public void testGetSettingsPageCompressedWithGzip() throws Exception {
+    Response response = resource.getSettings(SETTINGS_KEY, 0, 50, "deflate, gzip;q=0.8", request());
+
+    assertThat(response.getMetadata().getFirst("Content-Encoding"), is((Object) "gzip"));
+    assertThat(getTag(response), is(settingsManager.getSettingsTag(SETTINGS_KEY) + "-gzip"));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(outputStream);
+    byte[] page = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
+    JsonObject settings = new JsonParser().parse(new String(page, StandardCharsets.UTF_8)).getAsJsonObject();
+    assertThat(settings.get("total").getAsInt(), is(2));
+  }
+
+  @Test
+  public void testSettingsOfEachSettingsKeyAreNotShadowedByOtherPaths() {
+    for (Method method : SettingsResource.class.getMethods()) {
+      Path path = method.getAnnotation(Path.class);
+      if (path != null && path.value().contains("{settingsKey}")) {
+        assertThat(method.getName(), path.value().startsWith("/keys/{settingsKey}"), is(true));
+      }
+    }
+  }
+
+  @Test
+  public void testGetSettingsById() {
+    Response sequenced = resource.getSettings(SETTINGS_KEY, "1", request());
+    Response keyed = resource.getSettings("cultivar", lola.getSettingsId(), request());
+
+    assertThat(sequenced.getStatus(), is(200));
+    assertThat(new JsonParser().parse((String) sequenced.getEntity()).getAsJsonObject()
+        .get("species").getAsString(), is("derenbergii"));
+    assertThat(keyed.getStatus(), is(200));
+    assertThat(new JsonParser().parse((String) keyed.getEntity()).getAsJsonObject()
+        .get("parentage").getAsString(), is(lola.getParentage()));
+  }
+
+  @Test
+  public void testGetSettingsOfUnknownKeyOrIdIsNotFound() {
+    assertThat(resource.getSettings("sedum", 0, 50, null, request()).getStatus(), is(404));
+    assertThat(resource.getSettings("sedum", "0", request()).getStatus(), is(404));
+    assertThat(resource.getSettings(SETTINGS_KEY, "2", request()).getStatus(), is(404));
+    assertThat(resource.getSettings("cultivar", "Black Prince", request()).getStatus(), is(404));
+  }
+
+  @Test
+  public void testGetSettingsPageOfNegativeOffsetIsBadRequest() {
+    assertThat(resource.getSettings(SETTINGS_KEY, -1, 50, null, request()).getStatus(), is(400));
+    assertThat(resource.getSettings(SETTINGS_KEY, 0, -1, null, request()).getStatus(), is(400));
+  }
+
+  @Test
+  public void testGetSettingsByOthersIsForbidden() {
+    when(userManager.getRemoteUserKey()).thenReturn(USER);
 
+    assertThat(resource.getSettings(SETTINGS_KEY, 0, 50, null, request()).getStatus(), is(403));
+    assertThat(resource.getSettings(SETTINGS_KEY, "0", request()).getStatus(), is(403));
+    assertThat(resource.getChanges(null, null).getStatus(), is(403));
+  }
+
+  // Entity tag tests
+
+  @Test
+  public void testGetSettingsNotModifiedUntilChanged() throws Exception {
+    String tag = getTag(resource.getSettings(SETTINGS_KEY, 0, 50, null, request()));
+
+    assertThat(resource.getSettings(SETTINGS_KEY, 0, 50, null, request(null, tag)).getStatus(), is(304));
+    assertThat(resource.getSettings(SETTINGS_KEY, "0", request(null, tag)).getStatus(), is(304));
+
+    settingsManager.saveSettings(SettingsSample.echeveria_elegans());
+
+    Response response = resource.getSettings(SETTINGS_KEY, 0, 50, null, request(null, tag));
+    assertThat(response.getStatus(), is(200));
+    assertThat(getTag(response), is(not(tag)));
+    assertThat(readPage(response).get("total").getAsInt(), is(3));
+  }
+
+  @Test
+  public void testGzipPageHasTagOfItsOwn() {
+    String tag = getTag(resource.getSettings(SETTINGS_KEY, 0, 50, null, request()));
+
+    assertThat(resource.getSettings(SETTINGS_KEY, 0, 50, "gzip", request(null, tag)).getStatus(), is(200));
+  }
+
+  @Test
+  public void testGetSettingsOfAnotherTagIfMatchFails() {
+    assertThat(resource.getSettings(SETTINGS_KEY, 0, 50, null, request("other", null)).getStatus(), is(412));
+    assertThat(resource.getSettings(SETTINGS_KEY, "0", request("other", null)).getStatus(), is(412));
+  }
+
+  @Test
+  public void testManifestNotModifiedUntilChanged() {
+    Response response = resource.getManifest(request());
+    String tag = getTag(response);
+
+    assertThat(response.getStatus(), is(200));
+    assertThat(resource.getManifest(request(null, tag)).getStatus(), is(304));
+
+    settingsManager.saveSettings(SettingsSample.graptopetalum_amethystinum());
+
+    assertThat(resource.getManifest(request(null, tag)).getStatus(), is(200));
+  }
+
+  // Write tests
+
+  @Test
+  public void testAddSettings() throws Exception {
+    Response response = resource.addSettings(SETTINGS_KEY, "[{\"species\":\"elegans\"},{\"species\":\"hyalina\"}]");
+
+    assertThat(response.getStatus(), is(200));
+    assertThat(new JsonParser().parse((String) response.getEntity()).getAsJsonArray().get(1).getAsJsonObject()
+        .get("settingsId").getAsInt(), is(3));
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(4));
   }
 
   @Test
-  public void messageIsValid() {
-//    SettingsResource resource = new SettingsResource();
-//
-//    Response response = resource.getMessage();
-    // final SettingsResourceModel message = (SettingsResourceModel)
-    // response.getEntity();
-    //
-    // assertEquals("wrong message","Hello World",message.getMessage());
+  public void testUpdateSettings() {
+    Response response = resource.updateSettings(SETTINGS_KEY, "[{\"settingsId\":0,\"species\":\"agavoides\"}]");
+
+    assertThat(response.getStatus(), is(200));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, SettingsSample.Echeveria.class, 0).getSpecies(),
+        is("agavoides"));
+  }
+
+  @Test
+  public void testRemoveSettings() {
+    Response response = resource.removeSettings(SETTINGS_KEY, "[0]");
+    Response keyed = resource.removeSettings("cultivar", "[\"" + lola.getSettingsId() + "\"]");
+
+    assertThat(response.getStatus(), is(204));
+    assertThat(keyed.getStatus(), is(204));
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(1));
+    assertThat(settingsManager.hasSettings("cultivar"), is(false));
+  }
+
+  @Test
+  public void testChangeSettingsOfBadRequestIsBadRequest() {
+    assertThat(resource.addSettings(SETTINGS_KEY, "[{\"species\":").getStatus(), is(400));
+    assertThat(resource.addSettings(SETTINGS_KEY, "{\"species\":\"elegans\"}").getStatus(), is(400));
+    assertThat(resource.addSettings("cultivar", "[{\"settingsId\":\"" + lola.getSettingsId() + "\"}]").getStatus(),
+        is(400));
+    assertThat(resource.updateSettings(SETTINGS_KEY, "[{\"species\":\"elegans\"}]").getStatus(), is(400));
+    assertThat(resource.updateSettings(SETTINGS_KEY, "[{\"settingsId\":2}]").getStatus(), is(400));
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(2));
+  }
+
+  @Test
+  public void testChangeSettingsByOthersIsForbidden() {
+    when(userManager.getRemoteUserKey()).thenReturn(USER);
+
+    assertThat(resource.addSettings(SETTINGS_KEY, "[{\"species\":\"elegans\"}]").getStatus(), is(403));
+    assertThat(resource.updateSettings(SETTINGS_KEY, "[{\"settingsId\":0}]").getStatus(), is(403));
+    assertThat(resource.removeSettings(SETTINGS_KEY, "[0]").getStatus(), is(403));
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(2));
+  }
+
+  // Export and import tests
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testExportAndImportSettings() throws Exception {
+    String export = read(resource.exportSettings(false));
+    resource.removeSettings(SETTINGS_KEY, "[0,1]");
+
+    Response response = resource.importSettings(stream(export));
+
+    assertThat(response.getStatus(), is(200));
+    assertThat(((Map<String, Object>) response.getEntity()).get("imported"), is((Object) 3));
+    assertThat(settingsManager.getSettings(SETTINGS_KEY, SettingsSample.Echeveria.class, 1).getSpecies(),
+        is("derenbergii"));
+  }
+
+  @Test
+  public void testImportOfNoExportIsBadRequest() throws Exception {
+    assertThat(resource.importSettings(stream("{\"species\":\"elegans\"}\n")).getStatus(), is(400));
+    assertThat(settingsManager.getSettingsCount(SETTINGS_KEY), is(2));
+  }
+
+  @Test
+  public void testExportAndImportByOthersIsForbidden() throws Exception {
+    String export = read(resource.exportSettings(false));
+    when(userManager.getRemoteUserKey()).thenReturn(USER);
+
+    assertThat(resource.exportSettings(false).getStatus(), is(403));
+    assertThat(resource.importSettings(stream(export)).getStatus(), is(403));
   }
 
 }
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.echeveria.snippets.jira.api.MyPluginComponent;
+import org.echeveria.snippets.jira.settings.Settings;
 import org.echeveria.snippets.jira.settings.SettingsManager;
 import org.echeveria.snippets.jira.settings.SettingsSample;
 import org.echeveria.snippets.jira.settings.SettingsSample.Echeveria;
@@ -46,6 +47,7 @@ import org.mockito.stubbing.Answer;
 
 import com.atlassian.sal.api.pluginsettings.PluginSettings;
 import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -112,4 +114,17 @@ public class SettingsTest {
     assertThat(settings.isNewIn(settingsManager), is(false));
   }
 
+  @Test
+  public void testSettingsIsNewInSettingsManagerWithoutDeserializing() {
+    setUpMocks();
+    settingsManager = SettingsManager.getOrCreate(pluginSettingsFactory, MyPluginComponent.PLUGIN_KEY);
+
+    // Not even JSON, checking whether the settings are new should not deserialize them.
+    settingsMap.put(MyPluginComponent.PLUGIN_KEY + ":echeveria", Lists.newArrayList("#0", "#1"));
+
+    assertThat(Settings.Sequenced.create("echeveria", 1).isNewIn(settingsManager), is(false));
+    assertThat(Settings.Sequenced.create("echeveria", 2).isNewIn(settingsManager), is(true));
+    assertThat(Settings.Sequenced.create("echeveria").isNewIn(settingsManager), is(true));
+  }
+
 }